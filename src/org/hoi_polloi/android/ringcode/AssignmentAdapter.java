@@ -21,17 +21,29 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.SimpleCursorAdapter;
+import android.widget.TextView;
 
 
 ///////////////////////////////////////////////////////////////////////
 /**
  * <p>Connector between assignment database and list view.</p>
  * <p>Update (post-process) generated item view based on item logic.</p>
+ * <p>Each item shows the duration of its code with the current
+ * settings (estimated without compiling the code); codes beyond the
+ * time budget show the duration they are fitted to.</p>
  *
  * @author Bernd R. Fix   >Y<
  * @version 1.0
  */
 public class AssignmentAdapter extends SimpleCursorAdapter {
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private ListActivity parent = null;		// associated list view
+	private Settings settings = null;		// settings of compiler
+	private MorseCompiler compiler = null;	// compiler for duration estimates
 	
 	//=================================================================
 	/**
@@ -55,6 +67,7 @@ public class AssignmentAdapter extends SimpleCursorAdapter {
 				R.id.txt_code
 			}
 		);
+		this.parent = parent;
 	}
 	
 	//=================================================================
@@ -80,7 +93,36 @@ public class AssignmentAdapter extends SimpleCursorAdapter {
 			ui_icon.setImageResource (R.drawable.list_mode_on);
 		else
 			ui_icon.setImageResource (R.drawable.list_mode_off);
+
+		// show duration of code
+		TextView ui_dur = (TextView) v.findViewById (R.id.txt_duration);
+		ui_dur.setText (getDuration (c.getString (Repository.COLUMN_CODE)));
 		
 		return v;
 	}
+
+	//=================================================================
+	/**
+	 * <p>Get display text for the duration of a code.</p>
+	 * @param code String - Morse code
+	 * @return String - duration (empty if no code)
+	 */
+	private String getDuration (String code) {
+		if (code == null || code.length() == 0)
+			return "";
+		Settings s = Settings.get();
+		if (s != settings) {
+			// settings have changed: new timing and alphabet
+			compiler = new MorseCompiler (
+				MorseTiming.forDotLength (s.getSpeed(), s.getSpacing()),
+				Morse.getAlphabet (s.getAlphabet()));
+			settings = s;
+		}
+		int dur = compiler.estimate (code);
+		if (s.getBudget() == 0 || dur <= s.getBudget())
+			return parent.getString (R.string.list_duration, dur / 1000.0);
+		int[] n = compiler.count (code);
+		int fitted = compiler.getTiming().fit (n[0], n[1], n[2], s.getBudget()).getDuration (n[0], n[1], n[2]);
+		return parent.getString (R.string.list_fitted, fitted / 1000.0, dur / 1000.0);
+	}
 }
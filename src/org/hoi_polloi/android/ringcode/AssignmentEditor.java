@@ -21,11 +21,13 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Vibrator;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.PhoneLookup;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
@@ -34,6 +36,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -85,6 +88,10 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 	private static String	origPhoneNumber;
 	private static TextView	assocName;
 
+	// assignment for all numbers of contact (CheckBox)
+	private static CheckBox	allNumbers;
+	private static String	origContact;
+
 	// assigned morse code (EditText)
 	private static EditText	code;
 	private static String	origCode;
@@ -93,10 +100,16 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 	private static CheckBox	mode;
 	private static Boolean	origMode;
 
+	// output channel (Spinner)
+	private static Spinner	output;
+	private static Integer	origOutput;
+
 	// saved state (for revert action)
 	private static final String ORIG_PHONE = "origPhoneNumber";
 	private static final String ORIG_CODE  = "origCode";
 	private static final String ORIG_MODE  = "origMode";
+	private static final String ORIG_OUTPUT = "origOutput";
+	private static final String ORIG_CONTACT = "origContact";
 	private static boolean keepData = false;
 
 	//=================================================================
@@ -143,8 +156,10 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 		// grab editable views (editor elements)
 		phoneNumber = (EditText) findViewById (R.id.te_phone);
 		assocName = (TextView) findViewById (R.id.edit_name);
+		allNumbers = (CheckBox) findViewById (R.id.cb_contact);
 		code = (EditText) findViewById (R.id.te_code);
 		mode = (CheckBox) findViewById (R.id.cb_active);
+		output = (Spinner) findViewById (R.id.sp_output);
 
 		// perform query
 		cursor = managedQuery (uri, Repository.PROJECTION, null, null, null);
@@ -155,6 +170,8 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 			origPhoneNumber = savedInstanceState.getString (ORIG_PHONE);
 			origCode = savedInstanceState.getString (ORIG_CODE);
 			origMode = savedInstanceState.getBoolean (ORIG_MODE, true);
+			origOutput = savedInstanceState.getInt (ORIG_OUTPUT, Repository.NumberCode.OUTPUT_AUDIO);
+			origContact = savedInstanceState.getString (ORIG_CONTACT);
 		}
 	}
 
@@ -171,8 +188,16 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 			case R.id.btn_play: {
 				int volume = Setup.getVolume();
 				int speed = Setup.getSpeed();
+				int out = output.getSelectedItemPosition();
 				Morse beeper = new Morse (speed, volume);
-				beeper.sendCode (code.getText().toString());
+				MorseProgram prog = beeper.compile (code.getText().toString());
+				if (out != Repository.NumberCode.OUTPUT_AUDIO) {
+					Vibrator vib = (Vibrator) getSystemService (Context.VIBRATOR_SERVICE);
+					new VibratorBackend (vib).start (prog, null);
+				}
+				if (out != Repository.NumberCode.OUTPUT_HAPTIC)
+					beeper.play (prog);
+				beeper.release();
 			} break;
 			
 			// lookup contact info for telephone number and
@@ -231,6 +256,16 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 				if (origMode == null)
 					origMode = m;
 				mode.setChecked (m);
+
+				int o = cursor.getInt (Repository.COLUMN_OUTPUT);
+				if (origOutput == null)
+					origOutput = o;
+				output.setSelection (o);
+
+				text = cursor.getString (Repository.COLUMN_CONTACT);
+				if (origContact == null)
+					origContact = text;
+				allNumbers.setChecked (text != null);
 			}
 		}
 	}
@@ -246,6 +281,8 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 		outState.putString (ORIG_PHONE, origPhoneNumber);
 		outState.putString (ORIG_CODE, origCode);
 		outState.putBoolean (ORIG_MODE, origMode);
+		outState.putInt (ORIG_OUTPUT, origOutput);
+		outState.putString (ORIG_CONTACT, origContact);
 	}
 
 	//=================================================================
@@ -264,6 +301,7 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 			String pn = phoneNumber.getText().toString();
 			String cd = code.getText().toString();
 			boolean md = mode.isChecked();
+			int out = output.getSelectedItemPosition();
 
 			// If this activity is finished, and there is no data, then we
 			// do something a little special: simply delete the entry.
@@ -280,6 +318,12 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 				values.put (Repository.NumberCode.CODE,   cd);
 				values.put (Repository.NumberCode.ACTIVE, md ? 1 : 0);
 				values.put (Repository.NumberCode.NAME,   lookupContact (pn));
+				values.put (Repository.NumberCode.OUTPUT, out);
+				// contact of number (if assignment applies to all numbers)
+				if (allNumbers.isChecked())
+					values.put (Repository.NumberCode.CONTACT, NumberIndex.getContactKey (this, pn));
+				else
+					values.putNull (Repository.NumberCode.CONTACT);
 
 				// Commit all of our changes to persistent storage. When the update completes
 				// the content provider will notify the cursor of the change, which will
@@ -379,6 +423,8 @@ public class AssignmentEditor extends Activity implements DialogInterface.OnDism
 				values.put (Repository.NumberCode.NUMBER, origPhoneNumber);
 				values.put (Repository.NumberCode.CODE,   origCode);
 				values.put (Repository.NumberCode.ACTIVE, origMode ? 1 : 0);
+				values.put (Repository.NumberCode.OUTPUT, origOutput);
+				values.put (Repository.NumberCode.CONTACT, origContact);
 				getContentResolver().update (uri, values, null, null);
 			}
 			else if (state == STATE_INSERT) {
@@ -28,6 +28,7 @@ import android.view.View;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.widget.AdapterView;
 import android.widget.ListView;
+import android.widget.Toast;
 
 
 ///////////////////////////////////////////////////////////////////////
@@ -48,6 +49,8 @@ public class AssignmentList extends ListActivity {
 	public static final int MENU_ITEM_PLAY		= Menu.FIRST + 1;	// play code of selected entry
 	public static final int MENU_ITEM_TOGGLE	= Menu.FIRST + 2;	// Toggle "active" state
 	public static final int MENU_ITEM_INSERT	= Menu.FIRST + 3;	// insert new item (no selection required)
+	public static final int MENU_ITEM_RENDER	= Menu.FIRST + 4;	// render ringtone of selected entry
+	public static final int MENU_ITEM_RENDER_ALL = Menu.FIRST + 5;	// render ringtones of all entries
 
 	//-----------------------------------------------------------------
 	/**
@@ -121,6 +124,9 @@ public class AssignmentList extends ListActivity {
 		menu.add (Menu.NONE, MENU_ITEM_INSERT, Menu.NONE, R.string.menu_insert)
 			.setShortcut('3', 'a')
 			.setIcon (android.R.drawable.ic_menu_add);
+		// render ringtone files
+		menu.add (Menu.NONE, MENU_ITEM_RENDER_ALL, Menu.NONE, R.string.menu_render_all)
+			.setIcon (android.R.drawable.ic_menu_save);
 
 		// report success.
 		return true;
@@ -177,6 +183,9 @@ public class AssignmentList extends ListActivity {
 				Intent intent = new Intent (Intent.ACTION_INSERT, getIntent().getData());
 				startActivity (intent);
 				return true;
+			case MENU_ITEM_RENDER_ALL:
+				renderRingtones (-1, null, null);
+				return true;
 		}
 		// get it handled...
 		return super.onOptionsItemSelected(item);
@@ -207,6 +216,7 @@ public class AssignmentList extends ListActivity {
 			return;
 		menu.setHeaderTitle (cursor.getString (COLUMN_INDEX_NUMBER));
 		menu.add (Menu.NONE, MENU_ITEM_DELETE, Menu.NONE, R.string.menu_delete);
+		menu.add (Menu.NONE, MENU_ITEM_RENDER, Menu.NONE, R.string.menu_render);
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -234,8 +244,45 @@ public class AssignmentList extends ListActivity {
 				getContentResolver().delete (entry, null, null);
 				return true;
 			}
+			case MENU_ITEM_RENDER: {
+				Cursor cursor = (Cursor) getListAdapter().getItem (info.position);
+				if (cursor == null)
+					return false;
+				String title = cursor.getString (Repository.COLUMN_NAME);
+				if (title == null || title.length() == 0)
+					title = cursor.getString (Repository.COLUMN_NUMBER);
+				renderRingtones (info.id, "RingCode: " + title, cursor.getString (Repository.COLUMN_CODE));
+				return true;
+			}
 		}
 		// selection not handled.
 		return false;
 	}
+
+	//=================================================================
+	/**
+	 * <p>Render ringtone files in the background and report the
+	 * number of rendered files.</p>
+	 * @param id long - assignment identifier (-1 for all assignments)
+	 * @param title String - title of ringtone (single assignment)
+	 * @param code String - Morse code (single assignment)
+	 */
+	private void renderRingtones (final long id, final String title, final String code) {
+		final RingtoneExporter exporter = new RingtoneExporter (getContentResolver());
+		new Thread ("RingCode-Export") {
+			public void run () {
+				final int count;
+				if (id < 0)
+					count = exporter.renderAll();
+				else
+					count = exporter.render (id, title, code) ? 1 : 0;
+				runOnUiThread (new Runnable() {
+					public void run () {
+						String msg = getString (R.string.render_done, count);
+						Toast.makeText (AssignmentList.this, msg, Toast.LENGTH_SHORT).show();
+					}
+				});
+			}
+		}.start();
+	}
 }
@@ -0,0 +1,245 @@
+//*********************************************************************
+//*   PGMID.        STATE OF AN INCOMING CALL.                        *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.telephony.TelephonyManager;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Session of a phone call as seen by the ring handling: the state
+ * (ringing, playing, off-hook), the assignment found for the caller
+ * and its event in the {@link EventQueue}.</p>
+ * <p>There is at most one session (and so at most one notification)
+ * per device. All transitions are idempotent: repeated RINGING
+ * broadcasts of the same call re-use the session and its cached
+ * lookup, a second call ringing while off-hook (call waiting) is not
+ * notified. A watchdog ends sessions whose end was never broadcast.</p>
+ * <p>Callers without assignment get a generated code if enabled (see
+ * {@link CodeGenerator}).</p>
+ * <p>Sessions are only accessed on the ring handling thread.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class CallSession {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final int IDLE	= 0;	// no call (session ended)
+	public static final int RINGING	= 1;	// call is ringing
+	public static final int PLAYING	= 2;	// call is ringing, notification runs
+	public static final int OFFHOOK	= 3;	// call is active
+
+	private static final long WATCHDOG		= 15000;	// check interval (ms)
+	private static final long MAX_RINGING	= 120000;	// max. time of ringing (ms)
+
+	//=================================================================
+	/**
+	 * <p>Current session (or null).</p>
+	 */
+	private static CallSession current = null;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final Context context;			// application context
+	private final Handler handler;			// ring handling thread
+	private final long started;				// start of session (uptime)
+	private int state = IDLE;				// session state
+	private String number = null;			// caller number (or null)
+	private boolean decided = false;		// lookup done?
+	private NumberIndex.Entry match = null;	// assignment for caller (or null)
+	private CodeGenerator.Code generated = null;	// generated code (or null)
+	private EventQueue.Event event = null;	// queued notification (or null)
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Start new session.</p>
+	 * @param context Context - application context
+	 * @param handler Handler - ring handling thread
+	 * @param state int - initial state
+	 */
+	private CallSession (Context context, Handler handler, int state) {
+		this.context = context;
+		this.handler = handler;
+		this.state = state;
+		started = SystemClock.uptimeMillis();
+		handler.postDelayed (watchdog, WATCHDOG);
+	}
+
+	//=================================================================
+	//	Transitions (called on the ring handling thread)
+	//=================================================================
+	/**
+	 * <p>Phone is ringing: get the session of the call.</p>
+	 * @param context Context - application context
+	 * @param handler Handler - ring handling thread
+	 * @param number String - caller number (or null)
+	 * @return CallSession - session of ringing call (or null if not to
+	 * be notified)
+	 */
+	public static CallSession ringing (Context context, Handler handler, String number) {
+		CallSession s = current;
+		if (s != null) {
+			if (s.state == OFFHOOK) {
+				Debug.log ("Call waiting: no notification");
+				return null;
+			}
+			if (s.number == null || number == null || s.number.equals (number)) {
+				// same call: number may be delivered late
+				if (s.number == null && number != null) {
+					s.number = number;
+					s.decided = false;
+				}
+				return s;
+			}
+			// a different call: end previous session
+			s.end ("replaced");
+		}
+		s = new CallSession (context, handler, RINGING);
+		s.number = number;
+		current = s;
+		return s;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Call is answered (or an outgoing call started): stop the
+	 * notification, but keep the session until the phone is idle.</p>
+	 * @param context Context - application context
+	 * @param handler Handler - ring handling thread
+	 */
+	public static void offhook (Context context, Handler handler) {
+		if (current == null)
+			current = new CallSession (context, handler, OFFHOOK);
+		else {
+			current.stop();
+			current.state = OFFHOOK;
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Phone is idle: end the session.</p>
+	 */
+	public static void idle () {
+		if (current != null)
+			current.end ("idle");
+	}
+
+	//=================================================================
+	/**
+	 * <p>Find assignment for caller (once per session and number); an
+	 * unassigned caller gets a generated code (if enabled).</p>
+	 * @param buf char[] - buffer for canonical number
+	 * @return NumberIndex.Entry - assignment (or null)
+	 */
+	public NumberIndex.Entry decide (char[] buf) {
+		if (!decided && number != null) {
+			match = NumberIndex.find (context, number, buf);
+			generated = null;
+			if (match == null) {
+				generated = CodeGenerator.forCaller (context, number);
+				if (generated != null)
+					match = new NumberIndex.Entry (-1, number, generated.text,
+						Repository.NumberCode.OUTPUT_AUDIO);
+			}
+			decided = true;
+		}
+		return match;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Start notification with the assignment of the caller (if the
+	 * session is ringing and no notification runs yet). The call event
+	 * preempts all other notifications.</p>
+	 * @param received long - time of triggering event (uptime in ms)
+	 * @return boolean - notification started?
+	 */
+	public boolean play (long received) {
+		if (state != RINGING || current != this || match == null)
+			return false;
+		event = EventQueue.getInstance (context).post (
+			EventQueue.PRIORITY_CALL, match.code,
+			(generated != null ? generated.program : null), match.output, received, "call");
+		if (event == null)
+			return false;
+		state = PLAYING;
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get state of session.</p>
+	 * @return int - session state
+	 */
+	public int getState () {
+		return state;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Stop running notification.</p>
+	 */
+	private void stop () {
+		if (event != null) {
+			EventQueue.getInstance (context).cancel (event);
+			event = null;
+		}
+		if (state == PLAYING)
+			state = RINGING;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>End session.</p>
+	 * @param reason String - reason for logging
+	 */
+	private void end (String reason) {
+		stop();
+		state = IDLE;
+		handler.removeCallbacks (watchdog);
+		if (current == this)
+			current = null;
+		Debug.log ("Call session ended (" + reason + ") after "
+			+ (SystemClock.uptimeMillis() - started) + " ms");
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Watchdog: end sessions that are orphaned (the phone is idle or
+	 * has been ringing for too long).</p>
+	 */
+	private final Runnable watchdog = new Runnable() {
+		public void run () {
+			if (current != CallSession.this)
+				return;
+			TelephonyManager tm = (TelephonyManager) context.getSystemService (Context.TELEPHONY_SERVICE);
+			if (tm != null && tm.getCallState() == TelephonyManager.CALL_STATE_IDLE)
+				end ("orphaned");
+			else if (state != OFFHOOK && SystemClock.uptimeMillis() - started > MAX_RINGING)
+				end ("ringing too long");
+			else
+				handler.postDelayed (this, WATCHDOG);
+		}
+	};
+}
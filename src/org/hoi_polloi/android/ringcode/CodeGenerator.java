@@ -0,0 +1,218 @@
+//*********************************************************************
+//*   PGMID.        GENERATED CODES FOR UNASSIGNED CALLERS.           *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.ContactsContract.PhoneLookup;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Generate a code for callers without assignment: the last digits
+ * of the caller number or the display name of the caller in the
+ * contacts (falling back to the digits for unknown callers).</p>
+ * <p>Generated codes are fitted into the configured time budget (see
+ * {@link MorseTiming#fit(int, int, int, int)}) and cut to
+ * {@link #MAX_DURATION}. They are cached per number together with
+ * their compiled program, so repeated rings of a caller neither query
+ * the contacts nor compile again; the cache is bound to the settings
+ * snapshot it was generated with.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class CodeGenerator {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final int MODE_OFF	= 0;	// no generated codes
+	public static final int MODE_DIGITS	= 1;	// last digits of number
+	public static final int MODE_NAME	= 2;	// contact name (or digits)
+
+	public static final int MAX_DURATION	= 6000;	// max. duration of code (ms)
+	private static final int CACHE_SIZE		= 16;	// max. number of cached codes
+
+	//=================================================================
+	/**
+	 * <p>Generated code for a number.</p>
+	 */
+	public static final class Code {
+
+		public final String text;			// generated message
+		public final MorseProgram program;	// compiled message
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Constructor: Instantiate new generated code.</p>
+		 * @param text String - generated message
+		 * @param program MorseProgram - compiled message
+		 */
+		Code (String text, MorseProgram program) {
+			this.text = text;
+			this.program = program;
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Cache of generated codes (access order, least recently used
+	 * entries are removed):
+	 */
+	private static Settings cached = null;
+	private static final LinkedHashMap<String,Code> cache = new LinkedHashMap<String,Code> (CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<String,Code> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	//=================================================================
+	/**
+	 * <p>Get generated code for a caller.</p>
+	 * @param context Context - associated context
+	 * @param number String - caller number
+	 * @return Code - generated code (or null if not enabled or no
+	 * code fits into the duration limit)
+	 */
+	public static Code forCaller (Context context, String number) {
+		Settings s = Settings.get();
+		if (number == null || s.getGenerate() == MODE_OFF)
+			return null;
+		synchronized (cache) {
+			if (cached != s) {
+				// settings changed: codes and programs are outdated
+				cache.clear();
+				cached = s;
+			}
+			if (cache.containsKey (number))
+				return cache.get (number);
+		}
+		String text = null;
+		if (s.getGenerate() == MODE_NAME)
+			text = getContactName (context, number);
+		if (text == null)
+			text = lastDigits (number, s.getDigits());
+		Code code = fit (text, getCompiler (s), s.getBudget());
+		synchronized (cache) {
+			if (cached == s)
+				cache.put (number, code);
+		}
+		return code;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compile a message with the current settings (fitted into the
+	 * time budget and cut to the duration limit).</p>
+	 * @param text String - message
+	 * @return Code - compiled message (or null if nothing fits)
+	 */
+	public static Code forText (String text) {
+		Settings s = Settings.get();
+		return fit (text, getCompiler (s), s.getBudget());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get the last digits of a number.</p>
+	 * @param number String - phone number
+	 * @param count int - number of digits
+	 * @return String - last digits (or null if number has no digits)
+	 */
+	static String lastDigits (String number, int count) {
+		char[] buf = new char [count];
+		int pos = count;
+		for (int n = number.length() - 1; n >= 0 && pos > 0; n--) {
+			char ch = number.charAt (n);
+			if (ch >= '0' && ch <= '9')
+				buf[--pos] = ch;
+		}
+		if (pos == count)
+			return null;
+		return new String (buf, pos, count - pos);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compile message and cut it to the duration limit: characters
+	 * are removed from the end (a trailing word gap with them).</p>
+	 * @param text String - message (or null)
+	 * @param compiler MorseCompiler - compiler for current settings
+	 * @param budget int - time budget of codes (ms, 0=no limit)
+	 * @return Code - generated code (or null if nothing fits)
+	 */
+	static Code fit (String text, MorseCompiler compiler, int budget) {
+		if (text == null)
+			return null;
+		text = text.trim();
+		while (text.length() > 0) {
+			MorseProgram prog = compiler.compile (text, budget);
+			if (prog.isEmpty())
+				return null;
+			if (prog.getDuration() <= MAX_DURATION)
+				return new Code (text, prog);
+			text = text.substring (0, text.length() - 1).trim();
+		}
+		return null;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get compiler for settings.</p>
+	 * @param s Settings - settings snapshot
+	 * @return MorseCompiler - compiler
+	 */
+	private static MorseCompiler getCompiler (Settings s) {
+		return new MorseCompiler (
+			MorseTiming.forDotLength (s.getSpeed(), s.getSpacing()), Morse.getAlphabet (s.getAlphabet()));
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get display name of caller from the contacts.</p>
+	 * @param context Context - associated context
+	 * @param number String - caller number
+	 * @return String - display name (or null if unknown)
+	 */
+	private static String getContactName (Context context, String number) {
+		if (number.length() == 0)
+			return null;
+		Cursor c = null;
+		try {
+			c = context.getContentResolver().query (
+				Uri.withAppendedPath (PhoneLookup.CONTENT_FILTER_URI, Uri.encode (number)),
+				new String[] { PhoneLookup.DISPLAY_NAME },
+				null, null, null
+			);
+			if (c != null && c.moveToFirst())
+				return c.getString (0);
+		}
+		catch (Exception e) {
+			Debug.log ("Failed to access contact database");
+		}
+		finally {
+			// close query on exit
+			if (c != null)
+				c.close();
+		}
+		return null;
+	}
+}
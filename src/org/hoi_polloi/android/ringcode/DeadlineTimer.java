@@ -0,0 +1,140 @@
+//*********************************************************************
+//*   PGMID.        DRIFT-COMPENSATED ELEMENT TIMER.                  *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Timer for backends that drive every element from a thread.</p>
+ * <p>All deadlines are absolute offsets from the start of a run
+ * (based on {@link System#nanoTime()}), so an overshoot of one sleep
+ * is compensated by the next one instead of adding up. The lateness
+ * of every element start is recorded.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class DeadlineTimer {
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final Object lock = new Object();	// monitor for waits
+	private volatile boolean cancelled = false;	// stop all waits
+	private long start = 0;						// start of run (ns)
+	private int[] lateness = new int [0];		// per element (in us)
+	private int count = 0;						// recorded elements
+	private int maxLate = 0;					// max. lateness (us)
+	private long sumLate = 0;					// sum of lateness (us)
+
+	//=================================================================
+	/**
+	 * <p>Start a new run.</p>
+	 * @param elements int - number of elements in run
+	 */
+	public void start (int elements) {
+		if (lateness.length < elements)
+			lateness = new int [elements];
+		count = 0;
+		maxLate = 0;
+		sumLate = 0;
+		start = System.nanoTime();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Wait for an absolute deadline within the run.</p>
+	 * @param offset long - deadline (ms after start of run)
+	 * @param element int - element index to record lateness for (or -1)
+	 * @return boolean - deadline reached (false if cancelled)
+	 */
+	public boolean waitUntil (long offset, int element) {
+		long deadline = start + offset * 1000000L;
+		synchronized (lock) {
+			long remain;
+			while (!cancelled && (remain = deadline - System.nanoTime()) > 0) {
+				try {
+					lock.wait (remain / 1000000L, (int) (remain % 1000000L));
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}
+		if (cancelled)
+			return false;
+		if (element >= 0 && element < lateness.length) {
+			int late = (int) ((System.nanoTime() - deadline) / 1000L);
+			lateness[element] = late;
+			count = Math.max (count, element + 1);
+			sumLate += late;
+			if (late > maxLate)
+				maxLate = late;
+		}
+		return true;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Cancel all (current and future) waits.</p>
+	 */
+	public void cancel () {
+		cancelled = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Check for cancelled timer.</p>
+	 * @return boolean - timer is cancelled?
+	 */
+	public boolean isCancelled () {
+		return cancelled;
+	}
+
+	//=================================================================
+	//	Getter methods (statistics of last run)
+	//=================================================================
+	/**
+	 * <p>Get lateness of element start.</p>
+	 * @param element int - element index
+	 * @return int - lateness (in us)
+	 */
+	public int getLateness (int element) {
+		return (element < count ? lateness[element] : 0);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of recorded elements.</p>
+	 * @return int - number of elements
+	 */
+	public int getCount () {
+		return count;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get maximum lateness.</p>
+	 * @return int - lateness (in us)
+	 */
+	public int getMaxLateness () {
+		return maxLate;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get mean lateness.</p>
+	 * @return int - lateness (in us)
+	 */
+	public int getMeanLateness () {
+		return (count == 0 ? 0 : (int) (sumLate / count));
+	}
+}
@@ -35,7 +35,7 @@ public class Debug {
 	 * Constants:
 	 */
 	private static final String TAG = "RingCode";
-	private static final boolean verbose = true;
+	public static final boolean verbose = true;	// log messages (checked before building them)
 
 	//=================================================================
 	/**
@@ -0,0 +1,268 @@
+//*********************************************************************
+//*   PGMID.        NATIONAL DIALING PLANS (E.164 NORMALIZATION).     *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.util.HashMap;
+import java.util.Locale;
+import android.content.Context;
+import android.telephony.TelephonyManager;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Dialing plan of a region: country calling code, trunk prefix and
+ * international call prefix. It converts numbers as dialed in the
+ * region into international (E.164) form, so numbers can be compared
+ * exactly.</p>
+ * <p>Short numbers (service numbers, extensions) have no international
+ * form; they are left to the suffix matching of
+ * {@link NumberIndex#lookup(char[], int)}.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class DialingPlan {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final int MAX_DIGITS	= 15;	// max. length of E.164 number
+	private static final int MIN_NATIONAL	= 7;	// min. length of national number
+	private static final int NANP_NATIONAL	= 10;	// national number in NANP (w/o trunk prefix)
+
+	/**
+	 * <p>Dialing plans: "region:country code:trunk prefix:international
+	 * prefix". Regions without trunk prefix keep a leading zero as part
+	 * of the national number.</p>
+	 */
+	private static final String[] PLANS = {
+		"AR:54:0:00",	"AT:43:0:00",	"AU:61:0:0011",	"BE:32:0:00",
+		"BG:359:0:00",	"BR:55:0:00",	"CA:1:1:011",	"CH:41:0:00",
+		"CN:86:0:00",	"CZ:420::00",	"DE:49:0:00",	"DK:45::00",
+		"EE:372::00",	"EG:20:0:00",	"ES:34::00",	"FI:358:0:00",
+		"FR:33:0:00",	"GB:44:0:00",	"GR:30::00",	"HR:385:0:00",
+		"HU:36:06:00",	"IE:353:0:00",	"IL:972:0:00",	"IN:91:0:00",
+		"IS:354::00",	"IT:39::00",	"JP:81:0:010",	"KR:82:0:001",
+		"LI:423::00",	"LT:370:8:00",	"LU:352::00",	"LV:371::00",
+		"MX:52::00",	"NL:31:0:00",	"NO:47::00",	"NZ:64:0:00",
+		"PL:48::00",	"PT:351::00",	"RO:40:0:00",	"RS:381:0:00",
+		"RU:7:8:810",	"SE:46:0:00",	"SI:386:0:00",	"SK:421:0:00",
+		"TR:90:0:00",	"UA:380:0:00",	"US:1:1:011",	"ZA:27:0:00",
+	};
+
+	// plans by region (built once)
+	private static final HashMap<String,DialingPlan> regions = new HashMap<String,DialingPlan>();
+	static {
+		for (String p : PLANS) {
+			String[] f = p.split (":", -1);
+			regions.put (f[0], new DialingPlan (f[0], f[1], f[2], f[3]));
+		}
+	}
+
+	// plan of the device (determined on first use)
+	private static volatile DialingPlan home = null;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final String region;		// ISO 3166 region code
+	private final char[] country;		// country calling code
+	private final char[] trunk;			// trunk prefix (may be empty)
+	private final char[] intl;			// international call prefix
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new dialing plan.</p>
+	 * @param region String - ISO 3166 region code
+	 * @param country String - country calling code
+	 * @param trunk String - trunk prefix (may be empty)
+	 * @param intl String - international call prefix
+	 */
+	private DialingPlan (String region, String country, String trunk, String intl) {
+		this.region = region;
+		this.country = country.toCharArray();
+		this.trunk = trunk.toCharArray();
+		this.intl = intl.toCharArray();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get dialing plan of region.</p>
+	 * @param iso String - ISO 3166 region code
+	 * @return DialingPlan - dialing plan (or null if unknown)
+	 */
+	public static DialingPlan forRegion (String iso) {
+		if (iso == null)
+			return null;
+		return regions.get (iso.toUpperCase (Locale.US));
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get dialing plan of the device: region of the SIM card, of the
+	 * current network or of the locale (in this order).</p>
+	 * @param context Context - associated context
+	 * @return DialingPlan - home dialing plan (or null if unknown)
+	 */
+	public static DialingPlan getHome (Context context) {
+		DialingPlan plan = home;
+		if (plan != null)
+			return plan;
+		String iso = null;
+		TelephonyManager tm = (TelephonyManager) context.getSystemService (Context.TELEPHONY_SERVICE);
+		if (tm != null) {
+			iso = tm.getSimCountryIso();
+			if (iso == null || iso.length() == 0)
+				iso = tm.getNetworkCountryIso();
+		}
+		if (iso == null || iso.length() == 0)
+			iso = Locale.getDefault().getCountry();
+		plan = forRegion (iso);
+		if (plan == null)
+			Debug.log ("No dialing plan for region '" + iso + "'");
+		home = plan;
+		return plan;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get region of dialing plan.</p>
+	 * @return String - ISO 3166 region code
+	 */
+	public String getRegion () {
+		return region;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Convert number (as dialed in the region) into its international
+	 * form without the leading "+" (no memory is allocated).</p>
+	 * @param number CharSequence - phone number
+	 * @param buf char[] - buffer for converted number
+	 * @return int - length of E.164 number (-1 if the number has no
+	 * international form or the buffer is too small)
+	 */
+	public int toE164 (CharSequence number, char[] buf) {
+
+		// collect digits, check for leading '+'
+		int count = number.length();
+		int len = 0;
+		boolean plus = false;
+		for (int n = 0; n < count; n++) {
+			char ch = number.charAt (n);
+			if (ch == '+' && len == 0)
+				plus = true;
+			else if (ch >= '0' && ch <= '9') {
+				if (len == buf.length)
+					return -1;
+				buf[len++] = ch;
+			}
+			else if (Character.isDigit (ch))
+				return -1;
+		}
+		if (plus)
+			return (len <= MAX_DIGITS ? len : -1);
+
+		// international call prefix
+		if (startsWith (buf, len, intl)) {
+			len = shift (buf, len, intl.length, 0);
+			return (len <= MAX_DIGITS ? len : -1);
+		}
+		// national number (with trunk prefix if used in region); a
+		// number without trunk prefix is a local number (without area
+		// code), except for 10-digit numbers in the NANP
+		if (len - trunk.length < MIN_NATIONAL)
+			return -1;
+		int skip = 0;
+		if (startsWith (buf, len, trunk))
+			skip = trunk.length;
+		else if (trunk.length > 0 && !(isNanp() && len == NANP_NATIONAL))
+			return -1;
+		if (len - skip + country.length > Math.min (MAX_DIGITS, buf.length))
+			return -1;
+		len = shift (buf, len, skip, country.length);
+		System.arraycopy (country, 0, buf, 0, country.length);
+		return len;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Convert the leading digits of a number rule (as dialed in the
+	 * region) into international form (see {@link RuleAutomaton}).</p>
+	 * @param lead CharSequence - leading digits of rule
+	 * @param fixed int - number of single-digit positions of rule
+	 * @param open boolean - rule matches numbers of any length?
+	 * @return String - leading digits in international form (or null
+	 * if the rule only matches numbers without international form)
+	 */
+	public String toE164Prefix (CharSequence lead, int fixed, boolean open) {
+		char[] buf = lead.toString().toCharArray();
+		int len = buf.length;
+		if (startsWith (buf, len, intl))
+			return new String (buf, intl.length, len - intl.length);
+		if (!open && fixed - trunk.length < MIN_NATIONAL)
+			return null;
+		if (trunk.length == 0)
+			return new String (country) + lead;
+		if (startsWith (buf, len, trunk))
+			return new String (country) + new String (buf, trunk.length, len - trunk.length);
+		// NANP: national number dialed without trunk prefix
+		if (isNanp() && (open || fixed == NANP_NATIONAL))
+			return new String (country) + lead;
+		return null;
+	}
+
+	//=================================================================
+	//	Helper methods
+	//=================================================================
+	/**
+	 * <p>Check for region of the North American Numbering Plan (where
+	 * national numbers are dialed with or without trunk prefix).</p>
+	 * @return boolean - region in NANP?
+	 */
+	private boolean isNanp () {
+		return country.length == 1 && country[0] == '1';
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for prefix in buffer.</p>
+	 * @param buf char[] - digits
+	 * @param len int - number of digits
+	 * @param prefix char[] - prefix
+	 * @return boolean - buffer starts with (non-empty) prefix?
+	 */
+	private static boolean startsWith (char[] buf, int len, char[] prefix) {
+		if (prefix.length == 0 || len < prefix.length)
+			return false;
+		for (int n = 0; n < prefix.length; n++)
+			if (buf[n] != prefix[n])
+				return false;
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Replace a prefix of the buffer with room for another one.</p>
+	 * @param buf char[] - digits
+	 * @param len int - number of digits
+	 * @param remove int - length of prefix to remove
+	 * @param insert int - length of prefix to make room for
+	 * @return int - new number of digits
+	 */
+	private static int shift (char[] buf, int len, int remove, int insert) {
+		System.arraycopy (buf, remove, buf, insert, len - remove);
+		return len - remove + insert;
+	}
+}
@@ -0,0 +1,359 @@
+//*********************************************************************
+//*   PGMID.        PRIORITIZED QUEUE OF NOTIFICATION EVENTS.         *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import android.content.Context;
+import android.os.SystemClock;
+import android.os.Vibrator;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Bounded priority queue in front of the {@link PlaybackScheduler}:
+ * all event sources (calls, messages, requests of other applications)
+ * post their events here, and only the queue starts notifications.</p>
+ * <p>Events are played one after the other in order of priority and
+ * arrival:</p>
+ * <ul>
+ * <li>A call preempts any other notification; the preempted event is
+ * dropped (it will be stale when the call is over).</li>
+ * <li>An event for a code that is playing or waiting already is
+ * merged with that event.</li>
+ * <li>Events other than calls are dropped when they are older than
+ * {@link #MAX_AGE}; if the queue is full, the least important event
+ * is dropped.</li>
+ * </ul>
+ * <p>Events of a call run until they are cancelled; all other events
+ * play their code a limited number of times.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class EventQueue {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final int PRIORITY_CALL		= 0;	// incoming call
+	public static final int PRIORITY_MESSAGE	= 1;	// incoming message (SMS)
+	public static final int PRIORITY_APP		= 2;	// request of an application
+
+	public static final int CAPACITY	= 8;		// max. number of waiting events
+	public static final long MAX_AGE	= 60000;	// max. age of waiting events (ms)
+
+	//=================================================================
+	/*
+	 * Singleton instance:
+	 */
+	private static EventQueue instance = null;
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the shared event queue.</p>
+	 * @param context Context - associated context
+	 * @return EventQueue - queue instance
+	 */
+	public static synchronized EventQueue getInstance (Context context) {
+		if (instance == null)
+			instance = new EventQueue (context.getApplicationContext());
+		return instance;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Notification event.</p>
+	 */
+	public static final class Event {
+
+		private int priority;				// priority (PRIORITY_???)
+		private final String code;			// Morse code
+		private final MorseProgram program;	// compiled code (or null)
+		private final int output;			// output channel(s)
+		private final long received;		// time of event (uptime)
+		private final String source;		// origin (for logging)
+		private MorseNotifier notifier = null;	// running notification
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Constructor: Instantiate new event.</p>
+		 * @param priority int - priority (PRIORITY_???)
+		 * @param code String - Morse code
+		 * @param program MorseProgram - compiled code (or null)
+		 * @param output int - output channel (Repository.NumberCode.OUTPUT_???)
+		 * @param received long - time of event (uptime in ms)
+		 * @param source String - origin (for logging)
+		 */
+		Event (int priority, String code, MorseProgram program, int output, long received, String source) {
+			this.priority = priority;
+			this.code = code;
+			this.program = program;
+			this.output = output;
+			this.received = received;
+			this.source = source;
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Check if event notifies the same code.</p>
+		 * @param ev Event - other event
+		 * @return boolean - same code on same output?
+		 */
+		boolean isSame (Event ev) {
+			return code.equals (ev.code) && output == ev.output;
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Check if event is too old to be notified.</p>
+		 * @param now long - current time (uptime in ms)
+		 * @return boolean - event is stale?
+		 */
+		boolean isStale (long now) {
+			return priority != PRIORITY_CALL && now - received > MAX_AGE;
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get priority of event.</p>
+		 * @return int - priority (PRIORITY_???)
+		 */
+		public int getPriority () {
+			return priority;
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get string representation of event (for logging).</p>
+		 * @return String - description
+		 */
+		@Override
+		public String toString () {
+			return "[" + priority + "] '" + code + "' from " + source;
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Order of events: priority first, then time of arrival.</p>
+	 */
+	private static final Comparator<Event> ORDER = new Comparator<Event>() {
+		public int compare (Event a, Event b) {
+			if (a.priority != b.priority)
+				return a.priority - b.priority;
+			return (a.received < b.received ? -1 : (a.received > b.received ? 1 : 0));
+		}
+	};
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final Context context;		// application context
+	private final PriorityQueue<Event> waiting = new PriorityQueue<Event> (CAPACITY, ORDER);
+	private Event active = null;		// playing event (or null)
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new (empty) queue.</p>
+	 * @param context Context - application context
+	 */
+	private EventQueue (Context context) {
+		this.context = context;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Post a new event.</p>
+	 * @param priority int - priority (PRIORITY_???)
+	 * @param code String - Morse code
+	 * @param output int - output channel (Repository.NumberCode.OUTPUT_???)
+	 * @param received long - time of event (uptime in ms)
+	 * @param source String - origin (for logging)
+	 * @return Event - event that notifies the code (or null if dropped)
+	 */
+	public Event post (int priority, String code, int output, long received, String source) {
+		return post (priority, code, null, output, received, source);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Post a new event with a compiled code (compiled with the
+	 * current settings).</p>
+	 * @param priority int - priority (PRIORITY_???)
+	 * @param code String - Morse code
+	 * @param program MorseProgram - compiled code (or null)
+	 * @param output int - output channel (Repository.NumberCode.OUTPUT_???)
+	 * @param received long - time of event (uptime in ms)
+	 * @param source String - origin (for logging)
+	 * @return Event - event that notifies the code (or null if dropped)
+	 */
+	public synchronized Event post (int priority, String code, MorseProgram program, int output,
+			long received, String source) {
+		if (code == null || code.length() == 0)
+			return null;
+		Event ev = new Event (priority, code, program, output, received, source);
+		long now = SystemClock.uptimeMillis();
+		if (ev.isStale (now)) {
+			Debug.log ("Event dropped (stale): " + ev);
+			return null;
+		}
+		// merge with playing event (unless the new one is more important)
+		if (active != null && active.isSame (ev) && priority >= active.priority) {
+			Debug.log ("Event merged: " + ev);
+			return active;
+		}
+		// merge with waiting event (promoted if the new one is more important)
+		boolean merged = false;
+		for (Event w : waiting) {
+			if (w.isSame (ev)) {
+				if (priority < w.priority) {
+					waiting.remove (w);
+					w.priority = priority;
+					waiting.add (w);
+				}
+				Debug.log ("Event merged: " + ev);
+				ev = w;
+				merged = true;
+				break;
+			}
+		}
+		if (!merged) {
+			// back-pressure: drop stale events, then the least important
+			dropStale (now);
+			if (waiting.size() >= CAPACITY) {
+				Event worst = findWorst();
+				if (ORDER.compare (ev, worst) > 0) {
+					Debug.log ("Event dropped (queue full): " + ev);
+					return null;
+				}
+				waiting.remove (worst);
+				Debug.log ("Event dropped (queue full): " + worst);
+			}
+			waiting.add (ev);
+		}
+		// preempt less important notification
+		if (active != null && ev.priority < active.priority) {
+			Debug.log ("Event preempted: " + active);
+			stop (active);
+		}
+		dispatch();
+		return ev;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Cancel an event: stop its notification or remove it from the
+	 * queue.</p>
+	 * @param ev Event - event to cancel
+	 */
+	public synchronized void cancel (Event ev) {
+		if (ev == null)
+			return;
+		if (ev == active) {
+			stop (ev);
+			dispatch();
+		}
+		else
+			waiting.remove (ev);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Notification of an event has played all its codes (called on
+	 * the playback thread).</p>
+	 * @param ev Event - completed event
+	 */
+	private synchronized void finished (Event ev) {
+		if (ev != active)
+			return;
+		ev.notifier = null;
+		active = null;
+		dispatch();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Stop the playing event.</p>
+	 * @param ev Event - active event
+	 */
+	private void stop (Event ev) {
+		if (ev.notifier != null) {
+			ev.notifier.terminate();
+			ev.notifier = null;
+		}
+		active = null;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Start the next waiting event (if no event is playing).</p>
+	 */
+	private void dispatch () {
+		if (active != null)
+			return;
+		dropStale (SystemClock.uptimeMillis());
+		final Event ev = waiting.poll();
+		if (ev == null)
+			return;
+		RepeatPolicy policy = (ev.priority == PRIORITY_CALL ?
+			RepeatPolicy.fromSetup() : RepeatPolicy.forMessage());
+		Vibrator vib = (Vibrator) context.getSystemService (Context.VIBRATOR_SERVICE);
+		ev.notifier = new MorseNotifier (
+			PlaybackScheduler.getInstance().takePlayer(), new VibratorBackend (vib), policy);
+		ev.notifier.setCompletion (new Runnable() {
+			public void run () {
+				finished (ev);
+			}
+		});
+		active = ev;
+		if (ev.program != null)
+			ev.notifier.begin (ev.program, ev.received, ev.output);
+		else
+			ev.notifier.begin (ev.code, ev.received, ev.output);
+	}
+
+	//=================================================================
+	//	Helper methods
+	//=================================================================
+	/**
+	 * <p>Drop waiting events that are too old.</p>
+	 * @param now long - current time (uptime in ms)
+	 */
+	private void dropStale (long now) {
+		Iterator<Event> it = waiting.iterator();
+		while (it.hasNext()) {
+			Event w = it.next();
+			if (w.isStale (now)) {
+				it.remove();
+				Debug.log ("Event dropped (stale): " + w);
+			}
+		}
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Find the least important waiting event.</p>
+	 * @return Event - last event in queue order (or null)
+	 */
+	private Event findWorst () {
+		Event worst = null;
+		for (Event w : waiting)
+			if (worst == null || ORDER.compare (w, worst) > 0)
+				worst = w;
+		return worst;
+	}
+}
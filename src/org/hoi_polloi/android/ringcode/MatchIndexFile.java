@@ -0,0 +1,535 @@
+//*********************************************************************
+//*   PGMID.        MEMORY-MAPPED MATCH INDEX FILE.                   *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import android.content.Context;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Binary file with all active assignments for lookups in a freshly
+ * started process: the file is mapped read-only, so no database has
+ * to be opened before a code can be played.</p>
+ * <p>Layout (big endian): a header (magic, version, number of number
+ * and rule records, number of automaton states, offset of automaton,
+ * number of contact records, flags), the number records sorted by key
+ * and identifier, the rule records in order of precedence, the contact
+ * records sorted by key and identifier, the rule automaton (see
+ * {@link RuleAutomaton}; ten transitions per state, then the accepted
+ * rule per state) and the character data. A record holds the
+ * identifier, offset and length of the key (the reversed digits of the
+ * canonical number, the canonical rule pattern or the contact lookup
+ * key) and of the code (UTF-8), and the output channel. Rules are
+ * compiled when the file is written; lookups walk the mapped automaton
+ * and follow the rules of {@link NumberIndex}.</p>
+ * <p>The caller is only resolved to a contact (one phone lookup) if
+ * the header flags contact records ({@link #FLAG_CONTACTS}).</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class MatchIndexFile {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final String FILE_NAME	= "match.idx";
+	private static final int MAGIC			= 0x52434d58;	// "RCMX"
+	private static final int VERSION		= 4;
+	private static final int HEADER_SIZE	= 32;
+
+	// header flags
+	private static final int FLAG_CONTACTS	= 1;	// file has contact records
+	private static final int RECORD_SIZE	= 24;
+
+	// record layout
+	private static final int R_ID			= 0;	// long: assignment id
+	private static final int R_KEY			= 8;	// int: offset of key
+	private static final int R_CODE			= 12;	// int: offset of code
+	private static final int R_KEYLEN		= 16;	// short: length of key
+	private static final int R_CODELEN		= 18;	// short: length of code
+	private static final int R_OUTPUT		= 20;	// short: output channel
+
+	// serializes writers of the index file
+	private static final Object LOCK = new Object();
+
+	//=================================================================
+	/**
+	 * <p>Get location of index file.</p>
+	 * @param context Context - application context
+	 * @return File - index file
+	 */
+	public static File getFile (Context context) {
+		return new File (context.getFilesDir(), FILE_NAME);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if index file exists and has the current format.</p>
+	 * @param f File - index file
+	 * @return boolean - file is current?
+	 */
+	public static boolean isCurrent (File f) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile (f, "r");
+			try {
+				return raf.readInt() == MAGIC && raf.readInt() == VERSION;
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Write index file for list of (active) assignments. The file is
+	 * written under a temporary name and renamed, so readers never
+	 * see a partial file. If the file can't be written, the outdated
+	 * file is removed (lookups fall back to the repository).</p>
+	 * @param f File - index file
+	 * @param list List&lt;NumberIndex.Entry&gt; - assignments
+	 * @return boolean - file written?
+	 */
+	public static boolean write (File f, List<NumberIndex.Entry> list) {
+
+		// split numbers, rules and contacts; rules are compiled into an
+		// automaton
+		List<NumberIndex.Entry> numbers = new ArrayList<NumberIndex.Entry>();
+		List<NumberIndex.Entry> patterns = new ArrayList<NumberIndex.Entry>();
+		List<NumberIndex.Entry> contacts = new ArrayList<NumberIndex.Entry>();
+		for (NumberIndex.Entry e : list) {
+			if (e.code == null)
+				continue;
+			if (e.contact != null && e.contact.length() > 0)
+				contacts.add (e);
+			if (e.number.length() == 0)
+				continue;
+			if (RuleAutomaton.isPattern (e.number))
+				patterns.add (e);
+			else
+				numbers.add (e);
+		}
+		RuleAutomaton ra = (patterns.isEmpty() ? null : RuleAutomaton.compile (patterns));
+		NumberIndex.Entry[] rules = (ra == null ? new NumberIndex.Entry [0] : ra.getRules());
+		int[] next = (ra == null ? new int [0] : ra.getTransitions());
+		int[] accept = (ra == null ? new int [0] : ra.getAccepting());
+
+		// collect keys and codes of numbers (sorted), rules (in order
+		// of precedence, as referenced by the automaton) and contacts
+		// (sorted)
+		int total = numbers.size() + rules.length + contacts.size();
+		final byte[][] keys = new byte [total][];
+		byte[][] codes = new byte [total][];
+		final long[] ids = new long [total];
+		int[] outputs = new int [total];
+		int num = 0;
+		int cnum = 0;
+		int data = 0;
+		try {
+			for (NumberIndex.Entry e : numbers) {
+				keys[num] = new StringBuilder (e.number).reverse().toString().getBytes ("UTF-8");
+				codes[num] = e.code.getBytes ("UTF-8");
+				if (keys[num].length > Short.MAX_VALUE || codes[num].length > Short.MAX_VALUE)
+					continue;
+				ids[num] = e.id;
+				outputs[num] = e.output;
+				data += keys[num].length + codes[num].length;
+				num++;
+			}
+			for (int r = 0; r < rules.length; r++) {
+				NumberIndex.Entry e = rules[r];
+				int n = num + r;
+				keys[n] = e.number.getBytes ("UTF-8");
+				codes[n] = e.code.getBytes ("UTF-8");
+				if (keys[n].length > Short.MAX_VALUE || codes[n].length > Short.MAX_VALUE) {
+					// the automaton references every rule record: keep
+					// an empty record (an empty code is never played)
+					keys[n] = new byte [0];
+					codes[n] = new byte [0];
+				}
+				ids[n] = e.id;
+				outputs[n] = e.output;
+				data += keys[n].length + codes[n].length;
+			}
+			for (NumberIndex.Entry e : contacts) {
+				int n = num + rules.length + cnum;
+				keys[n] = e.contact.getBytes ("UTF-8");
+				codes[n] = e.code.getBytes ("UTF-8");
+				if (keys[n].length > Short.MAX_VALUE || codes[n].length > Short.MAX_VALUE)
+					continue;
+				ids[n] = e.id;
+				outputs[n] = e.output;
+				data += keys[n].length + codes[n].length;
+				cnum++;
+			}
+		}
+		catch (UnsupportedEncodingException e) {
+			return false;
+		}
+		Integer[] order = new Integer [num + rules.length + cnum];
+		for (int n = 0; n < order.length; n++)
+			order[n] = n;
+		Comparator<Integer> byKey = new Comparator<Integer>() {
+			public int compare (Integer a, Integer b) {
+				int c = compareKeys (keys[a], keys[b]);
+				if (c != 0)
+					return c;
+				return (ids[a] < ids[b] ? -1 : (ids[a] > ids[b] ? 1 : 0));
+			}
+		};
+		Arrays.sort (order, 0, num, byKey);
+		Arrays.sort (order, num + rules.length, order.length, byKey);
+
+		// assemble file content
+		int table = HEADER_SIZE + order.length * RECORD_SIZE;
+		int base = table + 4 * (next.length + accept.length);
+		ByteBuffer buf = ByteBuffer.allocate (base + data);
+		buf.putInt (MAGIC).putInt (VERSION).putInt (num).putInt (rules.length)
+			.putInt (accept.length).putInt (table).putInt (cnum)
+			.putInt (cnum > 0 ? FLAG_CONTACTS : 0);
+		int pos = base;
+		for (int n = 0; n < order.length; n++) {
+			int i = order[n];
+			int rec = HEADER_SIZE + n * RECORD_SIZE;
+			buf.putLong (rec + R_ID, ids[i]);
+			buf.putInt (rec + R_KEY, pos);
+			buf.putShort (rec + R_KEYLEN, (short) keys[i].length);
+			buf.position (pos);
+			buf.put (keys[i]);
+			pos += keys[i].length;
+			buf.putInt (rec + R_CODE, pos);
+			buf.putShort (rec + R_CODELEN, (short) codes[i].length);
+			buf.position (pos);
+			buf.put (codes[i]);
+			pos += codes[i].length;
+			buf.putShort (rec + R_OUTPUT, (short) outputs[i]);
+		}
+		buf.position (table);
+		for (int t : next)
+			buf.putInt (t);
+		for (int t : accept)
+			buf.putInt (t);
+		buf.rewind();
+
+		// write to temporary file and move in place (one writer at a
+		// time: the repository and the index rebuild share the file)
+		synchronized (LOCK) {
+			File tmp = new File (f.getPath() + ".tmp");
+			try {
+				RandomAccessFile raf = new RandomAccessFile (tmp, "rw");
+				try {
+					raf.setLength (0);
+					FileChannel ch = raf.getChannel();
+					while (buf.hasRemaining())
+						ch.write (buf);
+				}
+				finally {
+					raf.close();
+				}
+			}
+			catch (IOException e) {
+				Debug.log ("Failed: write match index");
+				tmp.delete();
+				f.delete();
+				return false;
+			}
+			if (!tmp.renameTo (f)) {
+				Debug.log ("Failed: rename match index");
+				tmp.delete();
+				f.delete();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Find best matching assignment in index file. An assignment of
+	 * the contact of the caller takes precedence; the contact is only
+	 * looked up if the file has contact records.</p>
+	 * @param f File - index file
+	 * @param context Context - associated context
+	 * @param number String - phone number of caller
+	 * @param digits char[] - canonical phone number
+	 * @param len int - length of number
+	 * @param suffix boolean - use suffix matching as fallback?
+	 * @return NumberIndex.Entry - best matching assignment (or null)
+	 * @throws IOException - index file not available or invalid
+	 */
+	public static NumberIndex.Entry lookup (File f, Context context, String number, char[] digits, int len,
+			boolean suffix) throws IOException {
+
+		// map file
+		MappedByteBuffer buf;
+		RandomAccessFile raf = new RandomAccessFile (f, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			buf = ch.map (FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		finally {
+			raf.close();
+		}
+		if (buf.capacity() < HEADER_SIZE || buf.getInt (0) != MAGIC || buf.getInt (4) != VERSION)
+			throw new IOException ("invalid match index");
+		int num = buf.getInt (8);
+		int rules = buf.getInt (12);
+		int states = buf.getInt (16);
+		int table = buf.getInt (20);
+		int contacts = buf.getInt (24);
+		int flags = buf.getInt (28);
+		if (num < 0 || rules < 0 || contacts < 0 || states < 0 || table < 0
+				|| buf.capacity() < HEADER_SIZE + (long) (num + rules + contacts) * RECORD_SIZE
+				|| buf.capacity() < table + 44L * states)
+			throw new IOException ("truncated match index");
+		if (len <= 0)
+			return null;
+
+		// assignment of contact (lowest identifier per contact key)
+		if ((flags & FLAG_CONTACTS) != 0 && contacts > 0) {
+			String contact = NumberIndex.getContactKey (context, number);
+			if (contact != null) {
+				byte[] ckey = contact.getBytes ("UTF-8");
+				int from = num + rules;
+				int rec = lowerBound (buf, from, from + contacts, ckey, ckey.length);
+				if (rec < from + contacts && compare (buf, rec, ckey, ckey.length) == 0)
+					return toContactEntry (buf, rec);
+			}
+		}
+
+		// reversed caller digits
+		byte[] key = new byte [len + 1];
+		for (int n = 0; n < len; n++) {
+			char ch = digits[len - 1 - n];
+			if (ch < '0' || ch > '9')
+				return null;
+			key[n] = (byte) ch;
+		}
+
+		// caller is a suffix of assigned numbers: keys starting with the
+		// caller key (exact match first, then lowest identifier)
+		int lo = lowerBound (buf, 0, num, key, len);
+		if (lo < num && keyLength (buf, lo) == len && compare (buf, lo, key, len) == 0)
+			return toEntry (buf, lo);
+
+		// number rules (automaton compiled when the file was written)
+		if (states > 0) {
+			int r = matchRule (buf, table, states, digits, len);
+			if (r >= 0 && r < rules)
+				return toEntry (buf, num + r, false);
+		}
+		if (!suffix)
+			return null;
+		key[len] = ':';
+		int hi = lowerBound (buf, 0, num, key, len + 1);
+		if (lo < hi) {
+			int rec = lo;
+			if (keyLength (buf, lo) != len) {
+				for (int n = lo + 1; n < hi; n++)
+					if (buf.getLong (record (n) + R_ID) < buf.getLong (record (rec) + R_ID))
+						rec = n;
+			}
+			return toEntry (buf, rec);
+		}
+		// longest assigned number that is a suffix of the caller
+		for (int n = len - 1; n > 0; n--) {
+			int rec = lowerBound (buf, 0, num, key, n);
+			if (rec < num && keyLength (buf, rec) == n && compare (buf, rec, key, n) == 0)
+				return toEntry (buf, rec);
+		}
+		return null;
+	}
+
+	//=================================================================
+	//	Helper methods
+	//=================================================================
+	/**
+	 * <p>Run the mapped rule automaton over a number.</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param table int - offset of automaton
+	 * @param states int - number of states
+	 * @param digits char[] - canonical phone number
+	 * @param len int - length of number
+	 * @return int - index of matching rule (or -1)
+	 */
+	private static int matchRule (ByteBuffer buf, int table, int states, char[] digits, int len) {
+		int state = 0;
+		for (int n = 0; n < len; n++) {
+			state = buf.getInt (table + 4 * (10*state + digits[n] - '0'));
+			if (state < 0 || state >= states)
+				return -1;
+		}
+		return buf.getInt (table + 4 * (10*states + state));
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get position of record.</p>
+	 * @param n int - record index
+	 * @return int - offset in file
+	 */
+	private static int record (int n) {
+		return HEADER_SIZE + n * RECORD_SIZE;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check that character data lies within the file.</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param off int - offset of data
+	 * @param len int - length of data
+	 * @throws IOException - data out of bounds (corrupt file)
+	 */
+	private static void checkRange (ByteBuffer buf, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || (long) off + len > buf.capacity())
+			throw new IOException ("corrupt match index");
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get key length of record.</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param n int - record index
+	 * @return int - length of key
+	 */
+	private static int keyLength (ByteBuffer buf, int n) {
+		return buf.getShort (record (n) + R_KEYLEN);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Find first record with a key not less than the given key.</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param lo int - first record of (sorted) range
+	 * @param hi int - end of range (exclusive)
+	 * @param key byte[] - search key
+	 * @param len int - length of search key
+	 * @return int - record index (hi if all keys are less)
+	 * @throws IOException - invalid key offset
+	 */
+	private static int lowerBound (ByteBuffer buf, int lo, int hi, byte[] key, int len) throws IOException {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare (buf, mid, key, len) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compare key of record with given key (byte-wise).</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param n int - record index
+	 * @param key byte[] - search key
+	 * @param len int - length of search key
+	 * @return int - comparison result (&lt;0, 0, &gt;0)
+	 * @throws IOException - invalid key offset
+	 */
+	private static int compare (ByteBuffer buf, int n, byte[] key, int len) throws IOException {
+		int rec = record (n);
+		int off = buf.getInt (rec + R_KEY);
+		int klen = buf.getShort (rec + R_KEYLEN);
+		checkRange (buf, off, klen);
+		int m = Math.min (klen, len);
+		for (int i = 0; i < m; i++) {
+			int d = buf.get (off + i) - key[i];
+			if (d != 0)
+				return d;
+		}
+		return klen - len;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compare two keys (byte-wise).</p>
+	 * @param a byte[] - first key
+	 * @param b byte[] - second key
+	 * @return int - comparison result (&lt;0, 0, &gt;0)
+	 */
+	private static int compareKeys (byte[] a, byte[] b) {
+		int m = Math.min (a.length, b.length);
+		for (int i = 0; i < m; i++) {
+			int d = a[i] - b[i];
+			if (d != 0)
+				return d;
+		}
+		return a.length - b.length;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Create entry from number record.</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param n int - record index
+	 * @return NumberIndex.Entry - assignment
+	 * @throws IOException - invalid character data
+	 */
+	private static NumberIndex.Entry toEntry (ByteBuffer buf, int n) throws IOException {
+		return toEntry (buf, n, true);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Create entry from record.</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param n int - record index
+	 * @param reversed boolean - key is a reversed number?
+	 * @return NumberIndex.Entry - assignment
+	 * @throws IOException - invalid character data or offsets
+	 */
+	private static NumberIndex.Entry toEntry (ByteBuffer buf, int n, boolean reversed) throws IOException {
+		int rec = record (n);
+		int koff = buf.getInt (rec + R_KEY);
+		int klen = buf.getShort (rec + R_KEYLEN);
+		int coff = buf.getInt (rec + R_CODE);
+		int clen = buf.getShort (rec + R_CODELEN);
+		checkRange (buf, koff, klen);
+		checkRange (buf, coff, clen);
+		byte[] key = new byte [klen];
+		byte[] code = new byte [clen];
+		buf.position (koff);
+		buf.get (key);
+		buf.position (coff);
+		buf.get (code);
+		String number = new String (key, "UTF-8");
+		if (reversed)
+			number = new StringBuilder (number).reverse().toString();
+		return new NumberIndex.Entry (
+			buf.getLong (rec + R_ID), number, new String (code, "UTF-8"), buf.getShort (rec + R_OUTPUT)
+		);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Create entry from contact record.</p>
+	 * @param buf ByteBuffer - mapped file
+	 * @param n int - record index
+	 * @return NumberIndex.Entry - assignment (without number)
+	 * @throws IOException - invalid character data
+	 */
+	private static NumberIndex.Entry toContactEntry (ByteBuffer buf, int n) throws IOException {
+		NumberIndex.Entry e = toEntry (buf, n, false);
+		return new NumberIndex.Entry (e.id, "", e.number, e.code, e.output);
+	}
+}
@@ -0,0 +1,105 @@
+//*********************************************************************
+//*   PGMID.        DETECT INCOMING MESSAGES AND TRIGGER NOTIFICATION.*
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.telephony.SmsMessage;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Detect incoming text messages (SMS) and queue a notification if
+ * the sender is assigned to a Morse code in the repository.</p>
+ * <p>The sender is looked up on the ring handling thread (see
+ * {@link RingDetector}) with the same index as callers; the code is
+ * posted to the {@link EventQueue} with message priority.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class MessageDetector extends BroadcastReceiver {
+
+	//=================================================================
+	/**
+	 * <p>Buffer for canonical sender number (used by worker only).</p>
+	 */
+	private static final char[] digits = new char [64];
+
+	//=================================================================
+	/**
+	 * <p>Broadcast message received.</p>
+	 * @param context Context - associated context
+	 * @param intent Intent - message parameters (action,category,data)
+	 */
+	@Override
+	public void onReceive (Context context, Intent intent) {
+
+		final long received = SystemClock.uptimeMillis();
+
+		// get sender of message (all parts have the same sender)
+		Bundle bundle = intent.getExtras();
+		if (bundle == null)
+			return;
+		Object[] pdus = (Object[]) bundle.get ("pdus");
+		if (pdus == null || pdus.length == 0)
+			return;
+		final String sender;
+		try {
+			SmsMessage msg = SmsMessage.createFromPdu ((byte[]) pdus[0]);
+			sender = msg.getOriginatingAddress();
+		}
+		catch (Exception e) {
+			Debug.log ("Failed: parse message: " + e);
+			return;
+		}
+		if (sender == null)
+			return;
+
+		// look up sender and queue notification on worker
+		final Context ctx = context.getApplicationContext();
+		RingDetector.getWorker().post (new Runnable() {
+			public void run () {
+				queueFor (ctx, sender, received, EventQueue.PRIORITY_MESSAGE, "message");
+			}
+		});
+	}
+
+	//=================================================================
+	/**
+	 * <p>Queue notification for the code assigned to a number (called
+	 * on the ring handling thread).</p>
+	 * @param context Context - application context
+	 * @param number String - phone number of sender
+	 * @param received long - time of event (uptime in ms)
+	 * @param priority int - event priority (EventQueue.PRIORITY_???)
+	 * @param source String - origin (for logging)
+	 */
+	static void queueFor (Context context, String number, long received, int priority, String source) {
+		try {
+			if (!Setup.isMessageNotify() || !RingDetector.isEnabled (context))
+				return;
+			NumberIndex.Entry match = NumberIndex.find (context, number, digits);
+			if (match == null)
+				return;
+			EventQueue.getInstance (context).post (priority, match.code, match.output, received, source);
+		}
+		catch (Exception e) {
+			Debug.log ("Failed: handle message: " + e);
+		}
+	}
+}
@@ -11,16 +11,12 @@
 
 package org.hoi_polloi.android.ringcode;
 
-///////////////////////////////////////////////////////////////////////
-//Import external declarations
-
-import android.media.AudioManager;
-import android.media.ToneGenerator;
-
 
 ///////////////////////////////////////////////////////////////////////
 /**
  * <p>Play morse code of string on built-in speaker.</p>
+ * <p>The actual output is delegated to a {@link MorseBackend} that
+ * is selected by configuration.</p>
  *
  * @author Bernd R. Fix   >Y<
  * @version 1.0
@@ -31,38 +27,86 @@ public class Morse {
 	/*
 	 * Constants:
 	 */
-	private static final String   KEYS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ!";
-	private static final String[] CODES = new String [] {
-		// numbers 0 .. 9
-		"-----", ".----", "..---", "...--", "....-",
-		".....", "-....", "--...", "---..", "----.",
-		// characters A .. Z
-		".-", "-...", "-.-.", "-..", ".", "..-.", "--.",
-		"....", "..", ".---", "-.-", ".-..", "--", "-.",
-		"---", ".--.", "--.-", ".-.", "...", "-", "..-",
-		"...-", ".--", "-..-", "-.--", "--..",
-		// special characters
-		"...-."
+	public static final int BACKEND_TONE	= 0;	// system tone generator
+	public static final int BACKEND_PCM		= 1;	// pre-rendered PCM samples
+
+
+	public static final int ALPHABET_ITU		= 0;	// extended ITU (Latin)
+	public static final int ALPHABET_CYRILLIC	= 1;	// Russian
+	public static final int ALPHABET_GREEK		= 2;	// Greek
+
+	private static final MorseAlphabet[] ALPHABETS = new MorseAlphabet[] {
+		TableAlphabet.ITU, TableAlphabet.CYRILLIC, TableAlphabet.GREEK
 	};
 
 	//=================================================================
 	/*
 	 * Attributes:
 	 */
-	private int dur = 100;				// (short) beep length (in ms)
-	private int tone = ToneGenerator.TONE_CDMA_DIAL_TONE_LITE;
-	private ToneGenerator gen = null;
+	private MorseCompiler compiler = null;
+	private MorseBackend backend = null;
 
 	//=================================================================
 	/**
 	 * <p>Constructor: Instantiate new Morse code player with given
-	 * speed and volume settings.</p>
+	 * speed and volume settings. Spacing, alphabet and backend are
+	 * taken from the configuration.</p>
 	 * @param dur int - speed parameter (duration of short beep in ms)
 	 * @param vol int - speaker volume (0..100)
 	 */
 	public Morse (int dur, int vol) {
-		this.dur = dur;
-		gen = new ToneGenerator (AudioManager.STREAM_ALARM, vol);
+		this (dur, vol, Setup.getBackend());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new Morse code player with given
+	 * speed and volume settings and output backend.</p>
+	 * @param dur int - speed parameter (duration of short beep in ms)
+	 * @param vol int - speaker volume (0..100)
+	 * @param type int - backend type (BACKEND_???)
+	 */
+	public Morse (int dur, int vol, int type) {
+		this (MorseTiming.forDotLength (dur, Setup.getSpacing()), getAlphabet (Setup.getAlphabet()), vol, type);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new Morse code player with given
+	 * timing, alphabet, volume setting and output backend.</p>
+	 * @param timing MorseTiming - timing parameters
+	 * @param alphabet MorseAlphabet - character table
+	 * @param vol int - speaker volume (0..100)
+	 * @param type int - backend type (BACKEND_???)
+	 */
+	public Morse (MorseTiming timing, MorseAlphabet alphabet, int vol, int type) {
+		compiler = new MorseCompiler (timing, alphabet);
+		switch (type) {
+			case BACKEND_PCM:	backend = new PcmBackend (vol);		break;
+			default:			backend = new ToneBackend (vol);	break;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Compile string of characters for (repeated) playback.</p>
+	 * @param s String - message
+	 * @return MorseProgram - compiled code
+	 */
+	public MorseProgram compile (String s) {
+		return compiler.compile (s);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compile string of characters with a timing that fits into a
+	 * time budget.</p>
+	 * @param s String - message
+	 * @param budget int - max. duration (ms, 0=no limit)
+	 * @return MorseProgram - compiled code
+	 */
+	public MorseProgram compile (String s, int budget) {
+		return compiler.compile (s, budget);
 	}
 
 	//=================================================================
@@ -75,49 +119,100 @@ public class Morse {
 		// check for valid string
 		if (s == null)
 			return;
-		
-		// get length of string.
-		int len = s.length();
-		// process all characters...
-		for (int i = 0; i < len; i++)
-			sendChar (s.charAt(i));
+		play (compile (s));
 	}
 
 	//=================================================================
 	/**
-	 * <p>Play Morse code for single character.</p>
-	 * @param char ch - character to be morsed
-	 */
-	private void sendChar (char ch) {
-
-		// get position of char in "keys"
-		int pos = KEYS.indexOf (ch);
-		if (pos != -1) {
-
-			// get code (and its length)
-			String code = CODES[pos];
-			int len = code.length();
-			// process all characters...
-			for (int i = 0; i < len; i++) {
-				int pause = 0;
-				switch (code.charAt(i)) {
-					case '.':	gen.startTone (tone, dur);		pause = 2;	break;
-					case '-':	gen.startTone (tone, 3*dur);	pause = 4;	break;
-				}
-				delay (pause * dur);
-			}
-			delay (4 * dur);
-		}
+	 * <p>Play compiled Morse code.</p>
+	 * @param prog MorseProgram - compiled code
+	 */
+	public void play (MorseProgram prog) {
+		backend.play (prog);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Allocate output resources ahead of the first playback.</p>
+	 */
+	public void prepare () {
+		backend.prepare();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Stop playback in progress (may be called from any thread).</p>
+	 */
+	public void cancel () {
+		backend.cancel();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Release output resources of the player.</p>
+	 */
+	public void release () {
+		backend.release();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get shipped alphabet.</p>
+	 * @param id int - alphabet identifier (ALPHABET_???)
+	 * @return MorseAlphabet - alphabet (ITU for unknown identifiers)
+	 */
+	public static MorseAlphabet getAlphabet (int id) {
+		if (id < 0 || id >= ALPHABETS.length)
+			return ALPHABETS[ALPHABET_ITU];
+		return ALPHABETS[id];
 	}
 
 	//=================================================================
+	//	Packed element sequences (see MorseAlphabet)
+	//=================================================================
+	/**
+	 * <p>Pack element sequence.</p>
+	 * @param code String - sequence of '.' and '-'
+	 * @return int - bit-packed element sequence
+	 */
+	public static int pack (String code) {
+		int p = 1;
+		for (int n = 0; n < code.length(); n++)
+			p = (p << 1) | (code.charAt(n) == '-' ? 1 : 0);
+		return p;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of elements in packed sequence.</p>
+	 * @param code int - bit-packed element sequence
+	 * @return int - number of elements
+	 */
+	public static int elements (int code) {
+		return (code == 0 ? 0 : 31 - Integer.numberOfLeadingZeros (code));
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for dash in packed sequence.</p>
+	 * @param code int - bit-packed element sequence
+	 * @param n int - element index (0 = first element)
+	 * @return boolean - element is a dash?
+	 */
+	public static boolean isDash (int code, int n) {
+		return ((code >> (elements (code) - 1 - n)) & 1) != 0;
+	}
+	//-----------------------------------------------------------------
 	/**
-	 * <p>Delay thread for given number of milliseconds.</p>
-	 * @param t int - number of milliseconds
+	 * <p>Concatenate two packed sequences without gap (prosigns).</p>
+	 * @param a int - first bit-packed sequence (or 0)
+	 * @param b int - second bit-packed sequence
+	 * @return int - combined sequence (0 if too long)
 	 */
-	private void delay (int t) {
-		try {
-			Thread.sleep (t);
-		} catch (Exception e) { }
+	public static int concat (int a, int b) {
+		if (a == 0)
+			return b;
+		int nb = elements (b);
+		if (elements (a) + nb > 30)
+			return 0;
+		return (a << nb) | (b & ((1 << nb) - 1));
 	}
 }
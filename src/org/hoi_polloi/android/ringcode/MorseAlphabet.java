@@ -0,0 +1,42 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE ALPHABET.                              *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Mapping of characters to Morse code element sequences.</p>
+ * <p>Element sequences are bit-packed into an int: the highest set
+ * bit is a start marker, the bits below it are the elements in order
+ * (1 = dash, 0 = dot). "A" (.-) is therefore 0b110. Use the helper
+ * methods in {@link Morse} to decode a packed sequence.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public interface MorseAlphabet {
+
+	//=================================================================
+	/**
+	 * <p>Get element sequence for character. Implementations must
+	 * answer in constant time without allocating memory.</p>
+	 * @param ch char - character to be morsed
+	 * @return int - bit-packed element sequence (0 if unknown)
+	 */
+	int lookup (char ch);
+
+	//=================================================================
+	/**
+	 * <p>Get name of alphabet.</p>
+	 * @return String - alphabet name
+	 */
+	String getName ();
+}
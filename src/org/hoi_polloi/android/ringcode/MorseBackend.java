@@ -0,0 +1,51 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE OUTPUT BACKEND.                        *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Output backend used by the Morse code player.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public interface MorseBackend {
+
+	//=================================================================
+	/**
+	 * <p>Play compiled Morse code. The method returns after the code
+	 * has been played completely.</p>
+	 * @param prog MorseProgram - compiled code to be played
+	 */
+	void play (MorseProgram prog);
+
+	//=================================================================
+	/**
+	 * <p>Allocate output resources ahead of the first playback, so
+	 * that it can start without delay.</p>
+	 */
+	void prepare ();
+
+	//=================================================================
+	/**
+	 * <p>Stop playback: a running {@link #play(MorseProgram)} falls
+	 * silent and returns promptly, later calls return immediately.
+	 * May be called from any thread.</p>
+	 */
+	void cancel ();
+
+	//=================================================================
+	/**
+	 * <p>Release all resources held by the backend.</p>
+	 */
+	void release ();
+}
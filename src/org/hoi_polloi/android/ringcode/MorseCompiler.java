@@ -0,0 +1,203 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE COMPILER.                              *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Compile a message into a {@link MorseProgram} of on/off
+ * durations for given timing parameters.</p>
+ * <p>A dot lasts one unit and a dash three units; elements within a
+ * character are separated by one unit. Characters are separated by
+ * the character gap and words (blanks in the message) by the word
+ * gap. Characters enclosed in angle brackets (like "&lt;AR&gt;") are
+ * sent as a prosign without gaps. Unknown characters are skipped.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class MorseCompiler {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int WORD_GAP = -1;		// marker for blank in message
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private MorseTiming timing = null;
+	private MorseAlphabet alphabet = null;
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new compiler for given timing and
+	 * alphabet.</p>
+	 * @param timing MorseTiming - timing parameters
+	 * @param alphabet MorseAlphabet - character table
+	 */
+	public MorseCompiler (MorseTiming timing, MorseAlphabet alphabet) {
+		this.timing = timing;
+		this.alphabet = alphabet;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get timing parameters used by the compiler.</p>
+	 * @return MorseTiming - timing parameters
+	 */
+	public MorseTiming getTiming () {
+		return timing;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get alphabet used by the compiler.</p>
+	 * @return MorseAlphabet - character table
+	 */
+	public MorseAlphabet getAlphabet () {
+		return alphabet;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Compile message into timing program.</p>
+	 * @param s String - message
+	 * @return MorseProgram - compiled program
+	 */
+	public MorseProgram compile (String s) {
+
+		// first pass: resolve characters and prosigns into packed
+		// element sequences (WORD_GAP marks a blank).
+		int[] codes = new int [s.length()];
+		int num = resolve (s, codes);
+		int count = 0;
+		for (int i = 0; i < num; i++)
+			if (codes[i] != WORD_GAP)
+				count += Morse.elements (codes[i]);
+		int[] prog = new int [2*count];
+
+		// second pass: emit on/off durations
+		int unit = timing.getUnit();
+		int pos = 0;
+		for (int i = 0; i < num; i++) {
+			int code = codes[i];
+			if (code == WORD_GAP) {
+				// stretch the gap after the previous character
+				if (pos > 0)
+					prog[pos-1] = timing.getWordGap();
+				continue;
+			}
+			int n = Morse.elements (code);
+			for (int j = 0; j < n; j++) {
+				prog[pos++] = (Morse.isDash (code, j) ? 3*unit : unit);
+				prog[pos++] = (j < n-1 ? unit : timing.getCharGap());
+			}
+		}
+		String key = alphabet.getName() + ':' + unit + '/' + timing.getCharGap()
+			+ '/' + timing.getWordGap() + ':' + s;
+		return new MorseProgram (prog, key);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compile message with a timing that fits into a time budget
+	 * (see {@link MorseTiming#fit(int, int, int, int)}).</p>
+	 * @param s String - message
+	 * @param budget int - max. duration (ms, 0=no limit)
+	 * @return MorseProgram - compiled program
+	 */
+	public MorseProgram compile (String s, int budget) {
+		if (budget > 0) {
+			int[] n = count (s);
+			MorseTiming t = timing.fit (n[0], n[1], n[2], budget);
+			if (t != timing)
+				return new MorseCompiler (t, alphabet).compile (s);
+		}
+		return compile (s);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Estimate duration of a message without compiling it (the
+	 * result equals the duration of the compiled program).</p>
+	 * @param s String - message
+	 * @return int - duration (ms)
+	 */
+	public int estimate (String s) {
+		int[] n = count (s);
+		return timing.getDuration (n[0], n[1], n[2]);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Count the timing units of a message: units within characters
+	 * (elements and the gaps between them), gaps between characters and
+	 * gaps between words (each replaces a character gap).</p>
+	 * @param s String - message
+	 * @return int[] - number of units, character gaps and word gaps
+	 */
+	public int[] count (String s) {
+		int[] codes = new int [s.length()];
+		int num = resolve (s, codes);
+		int units = 0, chars = 0, words = 0;
+		boolean word = false;
+		for (int i = 0; i < num; i++) {
+			int code = codes[i];
+			if (code == WORD_GAP) {
+				// stretch the gap after the previous character
+				if (chars > 0 && !word) {
+					chars--;
+					words++;
+					word = true;
+				}
+				continue;
+			}
+			int n = Morse.elements (code);
+			for (int j = 0; j < n; j++)
+				units += (Morse.isDash (code, j) ? 3 : 1) + (j < n-1 ? 1 : 0);
+			chars++;
+			word = false;
+		}
+		return new int[] { units, chars, words };
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Resolve characters and prosigns of a message into packed
+	 * element sequences; unknown characters are skipped.</p>
+	 * @param s String - message
+	 * @param codes int[] - element sequences (WORD_GAP marks a blank)
+	 * @return int - number of sequences
+	 */
+	private int resolve (String s, int[] codes) {
+		int len = s.length();
+		int num = 0;
+		for (int i = 0; i < len; i++) {
+			char ch = s.charAt(i);
+			int code = 0;
+			if (ch == ' ')
+				code = WORD_GAP;
+			else if (ch == '<') {
+				// concatenate all characters up to closing bracket
+				while (++i < len && s.charAt(i) != '>')
+					code = Morse.concat (code, alphabet.lookup (s.charAt(i)));
+			}
+			else
+				code = alphabet.lookup (ch);
+			if (code != 0)
+				codes[num++] = code;
+		}
+		return num;
+	}
+}
@@ -11,76 +11,235 @@
 
 package org.hoi_polloi.android.ringcode;
 
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.os.SystemClock;
+
 
 ///////////////////////////////////////////////////////////////////////
 /**
- * <p>Morse code notification thread.</p>
+ * <p>Morse code notification: plays a code repeatedly on the shared
+ * {@link PlaybackScheduler} thread until it is terminated.</p>
+ * <p>Haptic output is handed to the system vibrator as one repeating
+ * pattern (see {@link VibratorBackend}).</p>
+ * <p>A notification with a limited schedule ends by itself after the
+ * last code and reports its completion.</p>
  *
  * @author Bernd R. Fix   >Y<
  * @version 1.0
  */
-public class MorseNotifier extends Thread {
+public class MorseNotifier implements Runnable {
 
 	//=================================================================
 	/*
 	 * Attributes:
 	 */
 	private Morse beeper = null;
-	private String code = null;
-	private boolean running = false;
+	private VibratorBackend haptic = null;
+	private MorseProgram code = null;
+	private RepeatPolicy policy = null;
+	private volatile boolean running = false;
+	private boolean audio = true;		// play codes on audio backend?
+	private Runnable completion = null;	// called when a limited schedule ends
+	private long received = 0;			// time of triggering event
+	private int played = 0;				// number of codes played
 
 	//=================================================================
 	/**
-	 * <p>Constructor: Instantiate new notification thread with given
+	 * <p>Constructor: Instantiate new notification with given
 	 * speed and volume settings.</p>
 	 * @param dur int - speed parameter (duration of short beep in ms)
 	 * @param vol int - speaker volume (0..100)
 	 */
 	public MorseNotifier (int dur, int vol) {
-		beeper = new Morse (dur, vol);
+		this (new Morse (dur, vol));
+	}
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new notification with given player
+	 * and the configured repeat schedule.</p>
+	 * @param beeper Morse - (prepared) Morse code player
+	 */
+	public MorseNotifier (Morse beeper) {
+		this (beeper, RepeatPolicy.fromSetup());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new notification with given player
+	 * and repeat schedule.</p>
+	 * @param beeper Morse - (prepared) Morse code player
+	 * @param policy RepeatPolicy - repeat schedule
+	 */
+	public MorseNotifier (Morse beeper, RepeatPolicy policy) {
+		this.beeper = beeper;
+		this.policy = policy;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new notification with given player,
+	 * haptic backend and the configured repeat schedule.</p>
+	 * @param beeper Morse - (prepared) Morse code player
+	 * @param haptic VibratorBackend - haptic output (or null)
+	 */
+	public MorseNotifier (Morse beeper, VibratorBackend haptic) {
+		this (beeper, haptic, RepeatPolicy.fromSetup());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new notification with given player,
+	 * haptic backend and repeat schedule.</p>
+	 * @param beeper Morse - (prepared) Morse code player
+	 * @param haptic VibratorBackend - haptic output (or null)
+	 * @param policy RepeatPolicy - repeat schedule
+	 */
+	public MorseNotifier (Morse beeper, VibratorBackend haptic, RepeatPolicy policy) {
+		this (beeper, policy);
+		this.haptic = haptic;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Set handler for the end of a limited schedule (called on the
+	 * playback thread; not called if the notification is terminated).</p>
+	 * @param completion Runnable - completion handler
+	 */
+	public void setCompletion (Runnable completion) {
+		this.completion = completion;
 	}
 
 	//=================================================================
 	/**
-	 * <p>Kick-off notification thread with given morse code.</p>
+	 * <p>Kick-off notification with given morse code. Calls on a
+	 * running notification are ignored.</p>
 	 * @param code String - morse code notification
 	 */
 	public void begin (String code) {
-		if (code == null)
+		begin (code, SystemClock.uptimeMillis());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Kick-off notification with given morse code.</p>
+	 * @param code String - morse code notification
+	 * @param received long - time of triggering event (uptime in ms)
+	 */
+	public void begin (String code, long received) {
+		begin (code, received, Repository.NumberCode.OUTPUT_AUDIO);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Kick-off notification with given morse code on the given
+	 * output channel(s).</p>
+	 * @param code String - morse code notification
+	 * @param received long - time of triggering event (uptime in ms)
+	 * @param output int - output channel (Repository.NumberCode.OUTPUT_???)
+	 */
+	public void begin (String code, long received, int output) {
+		if (code == null || running)
 			return;
-		this.code = code;
-		start();
+		begin (beeper.compile (code, Setup.getBudget()), received, output);
 	}
 
 	//=================================================================
 	/**
-	 * <p>Execute thread.
+	 * <p>Kick-off notification with a compiled code (compiled with the
+	 * timing of the player) on the given output channel(s).</p>
+	 * @param prog MorseProgram - compiled code
+	 * @param received long - time of triggering event (uptime in ms)
+	 * @param output int - output channel (Repository.NumberCode.OUTPUT_???)
 	 */
-	public void run () {
+	public void begin (MorseProgram prog, long received, int output) {
+		if (prog == null || running)
+			return;
+		this.code = prog;
+		this.received = received;
 		running = true;
-		delay (2000);
-		while (running) {
-			beeper.sendCode (code);
-			delay (5000);
+		if (output != Repository.NumberCode.OUTPUT_AUDIO && haptic != null)
+			haptic.start (this.code, policy);
+		// limited schedules run on the scheduler even without audio to
+		// detect their end
+		audio = (output != Repository.NumberCode.OUTPUT_HAPTIC);
+		if (audio || policy.getLimit() > 0)
+			PlaybackScheduler.getInstance().start (this, policy.getInitialDelay());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Play code once and schedule the next repetition (runs on the
+	 * playback thread). The next start is computed from the start of
+	 * this playback and the duration of the compiled code, so time
+	 * spent in the output backend does not stretch the schedule.</p>
+	 */
+	public void run () {
+		if (!running)
+			return;
+		if (policy.isDone (played)) {
+			// haptic output only: last code and its pause are over
+			complete();
+			return;
+		}
+		long start = SystemClock.uptimeMillis();
+		if (played == 0)
+			PlaybackScheduler.getInstance().recordStart (
+				start - received - policy.getInitialDelay());
+		if (audio)
+			beeper.play (code);
+		played++;
+		if (running && audio && policy.isDone (played))
+			complete();
+		else if (running) {
+			long next = start + policy.getPeriod (code, played);
+			PlaybackScheduler.getInstance().repeat (this, Math.max (0, next - SystemClock.uptimeMillis()));
 		}
 	}
 
 	//=================================================================
 	/**
-	 * <p>Delay notification thread for given time.</p>
-	 * @param t int - delay in milliseconds
+	 * <p>Limited schedule has ended: release output and report.</p>
 	 */
-	private void delay (int t) {
-		try {
-			Thread.sleep (t);
-		} catch (InterruptedException e) { }
+	private void complete () {
+		if (!running)
+			return;
+		PlaybackScheduler.getInstance().cancel (this);
+		if (completion != null)
+			completion.run();
 	}
 
 	//=================================================================
 	/**
-	 * <p>Stop notification thread.</p>
+	 * <p>Stop notification.</p>
 	 */
 	public void terminate () {
+		if (!running)
+			return;
+		running = false;
+		if (haptic != null)
+			haptic.cancel();
+		PlaybackScheduler.getInstance().cancel (this);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Stop repetitions and silence output (called by the scheduler
+	 * from any thread).</p>
+	 */
+	void cancelOutput () {
 		running = false;
+		beeper.cancel();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Release output resources (called by the scheduler on the
+	 * playback thread).</p>
+	 */
+	void finish () {
+		beeper.release();
 	}
 }
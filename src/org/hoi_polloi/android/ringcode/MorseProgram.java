@@ -0,0 +1,97 @@
+//*********************************************************************
+//*   PGMID.        COMPILED MORSE CODE TIMING PROGRAM.               *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Immutable sequence of on/off durations (in ms) for a Morse code
+ * message.</p>
+ * <p>Entries with even index are tone (on) durations, entries with
+ * odd index the following pause (off); the last pause is the gap after
+ * the final character or word. Output backends only replay this
+ * program.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public final class MorseProgram {
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final int[] timing;		// on/off durations
+	private final int duration;		// total duration (in ms)
+	private final String key;		// identifies source and parameters
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate program from timing data. The array
+	 * is owned by the program and must not be changed afterwards.</p>
+	 * @param timing int[] - on/off durations (in ms)
+	 * @param key String - identifier of message, timing and alphabet
+	 */
+	MorseProgram (int[] timing, String key) {
+		this.timing = timing;
+		this.key = key;
+		int total = 0;
+		for (int n = 0; n < timing.length; n++)
+			total += timing[n];
+		duration = total;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get number of entries (twice the number of elements).</p>
+	 * @return int - number of on/off entries
+	 */
+	public int size () {
+		return timing.length;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get duration of entry.</p>
+	 * @param n int - entry index (even: on, odd: off)
+	 * @return int - duration in ms
+	 */
+	public int get (int n) {
+		return timing[n];
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get total duration of the program.</p>
+	 * @return int - duration in ms
+	 */
+	public int getDuration () {
+		return duration;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get key of program: programs with equal keys are identical.</p>
+	 * @return String - identifier of message, timing and alphabet
+	 */
+	public String getKey () {
+		return key;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for empty program.</p>
+	 * @return boolean - program without any element?
+	 */
+	public boolean isEmpty () {
+		return timing.length == 0;
+	}
+}
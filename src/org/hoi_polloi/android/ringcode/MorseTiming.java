@@ -0,0 +1,217 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE TIMING (SPEED MODEL).                  *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Immutable timing parameters for Morse code.</p>
+ * <p>Speeds are based on the standard word "PARIS" (50 units per
+ * word, so a dot lasts 1200/WPM ms). With Farnsworth spacing the
+ * characters are sent at the character speed, but the gaps between
+ * characters and words are stretched to reach a lower effective
+ * speed.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public final class MorseTiming {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int PARIS_UNITS	= 50;	// units in "PARIS "
+	private static final int PARIS_CHARS	= 31;	// units within characters
+	private static final int PARIS_GAPS		= 19;	// units in char/word gaps
+	public static final int MIN_UNIT		= 20;	// shortest dot when fitting (60 wpm)
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final int unit;			// length of a dot (in ms)
+	private final int charGap;		// gap between characters (in ms)
+	private final int wordGap;		// gap between words (in ms)
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate timing parameters.</p>
+	 * @param unit int - length of a dot (in ms)
+	 * @param charGap int - gap between characters (in ms)
+	 * @param wordGap int - gap between words (in ms)
+	 */
+	private MorseTiming (int unit, int charGap, int wordGap) {
+		this.unit = Math.max (1, unit);
+		this.charGap = Math.max (this.unit, charGap);
+		this.wordGap = Math.max (this.charGap, wordGap);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Standard timing for given length of a dot.</p>
+	 * @param dur int - duration of short beep in ms
+	 * @return MorseTiming - timing parameters
+	 */
+	public static MorseTiming forDotLength (int dur) {
+		return new MorseTiming (dur, 3*dur, 7*dur);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Standard (PARIS) timing for given speed.</p>
+	 * @param wpm int - speed in words per minute
+	 * @return MorseTiming - timing parameters
+	 */
+	public static MorseTiming forWpm (int wpm) {
+		return forDotLength (toDotLength (wpm));
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Farnsworth timing for given character and effective speed.</p>
+	 * @param charWpm int - character speed in words per minute
+	 * @param effWpm int - effective speed in words per minute
+	 * @return MorseTiming - timing parameters
+	 */
+	public static MorseTiming forFarnsworth (int charWpm, int effWpm) {
+		return farnsworth (toDotLength (charWpm), effWpm);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Farnsworth timing for given length of a dot and an effective
+	 * speed given as percentage of the character speed.</p>
+	 * @param dur int - duration of short beep in ms
+	 * @param percent int - effective speed (percent of char speed)
+	 * @return MorseTiming - timing parameters
+	 */
+	public static MorseTiming forDotLength (int dur, int percent) {
+		if (percent <= 0 || percent >= 100)
+			return forDotLength (dur);
+		double charWpm = 1200.0 / Math.max (1, dur);
+		return farnsworth (dur, charWpm * percent / 100);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compute Farnsworth timing: the time of a "PARIS " word at
+	 * effective speed minus the time spent in characters is spread
+	 * over the 19 gap units of the word.</p>
+	 * @param dur int - duration of short beep in ms
+	 * @param effWpm double - effective speed in words per minute
+	 * @return MorseTiming - timing parameters
+	 */
+	private static MorseTiming farnsworth (int dur, double effWpm) {
+		if (effWpm <= 0)
+			return forDotLength (dur);
+		double gaps = 60000.0 / effWpm - PARIS_CHARS * dur;
+		return withGapUnit (dur, gaps / PARIS_GAPS);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Timing with gaps based on a stretched unit.</p>
+	 * @param dur int - duration of short beep in ms
+	 * @param fu double - length of a gap unit in ms (at least a dot)
+	 * @return MorseTiming - timing parameters
+	 */
+	private static MorseTiming withGapUnit (int dur, double fu) {
+		fu = Math.max (dur, fu);
+		return new MorseTiming (dur, (int) Math.round (3*fu), (int) Math.round (7*fu));
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get duration of a message with this timing.</p>
+	 * @param units int - units within characters
+	 * @param chars int - gaps between characters
+	 * @param words int - gaps between words
+	 * @return int - duration (ms)
+	 */
+	public int getDuration (int units, int chars, int words) {
+		return units*unit + chars*charGap + words*wordGap;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the slowest timing (not slower than this one) that plays a
+	 * message within a time budget: stretched (Farnsworth) gaps are
+	 * shortened first, so characters keep their sound; if standard
+	 * gaps are too long still, the dot is shortened (down to
+	 * {@link #MIN_UNIT}, even if the budget is exceeded then).</p>
+	 * @param units int - units within characters
+	 * @param chars int - gaps between characters
+	 * @param words int - gaps between words
+	 * @param budget int - max. duration (ms)
+	 * @return MorseTiming - fitting timing (this if it fits)
+	 */
+	public MorseTiming fit (int units, int chars, int words, int budget) {
+		if (getDuration (units, chars, words) <= budget)
+			return this;
+		int gaps = 3*chars + 7*words;
+		if (gaps == 0)
+			return this;
+
+		// shorten stretched gaps (keep dot length)
+		if (charGap > 3*unit || wordGap > 7*unit) {
+			double fu = Math.min ((double) (budget - units*unit) / gaps, wordGap / 7.0);
+			MorseTiming t = withGapUnit (unit, fu);
+			// rounding of the gaps may exceed the budget slightly
+			while (t.getDuration (units, chars, words) > budget && fu > unit) {
+				fu -= 1.0 / 7;
+				t = withGapUnit (unit, fu);
+			}
+			if (t.getDuration (units, chars, words) <= budget)
+				return t;
+		}
+		// standard gaps: shorten dot
+		int dur = Math.max (MIN_UNIT, Math.min (unit, budget / (units + gaps)));
+		return forDotLength (dur);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Convert speed (words per minute) into length of a dot.</p>
+	 * @param wpm int - speed in words per minute
+	 * @return int - duration of short beep in ms
+	 */
+	public static int toDotLength (int wpm) {
+		return 60000 / (PARIS_UNITS * Math.max (1, wpm));
+	}
+
+	//=================================================================
+	//	Getter methods
+	//=================================================================
+	/**
+	 * <p>Get length of a dot (one unit).</p>
+	 * @return int - duration in ms
+	 */
+	public int getUnit () {
+		return unit;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get gap between characters.</p>
+	 * @return int - duration in ms
+	 */
+	public int getCharGap () {
+		return charGap;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get gap between words.</p>
+	 * @return int - duration in ms
+	 */
+	public int getWordGap () {
+		return wordGap;
+	}
+}
@@ -0,0 +1,98 @@
+//*********************************************************************
+//*   PGMID.        NOTIFICATION REQUESTS OF OTHER APPLICATIONS.      *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Receive notification requests of other applications (holding the
+ * permission {@link #PERMISSION}). A request names either a phone
+ * number (extra {@link #EXTRA_NUMBER}; the assigned code is played) or
+ * the code itself (extra {@link #EXTRA_CODE}).</p>
+ * <p>Requests are posted to the {@link EventQueue} with the lowest
+ * priority. Requests with an unknown output channel or a code longer
+ * than {@link #MAX_CODE} characters are rejected; codes are compiled
+ * with the current settings and cut to
+ * {@link CodeGenerator#MAX_DURATION}.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class NotifyReceiver extends BroadcastReceiver {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final String ACTION		= "org.hoi_polloi.android.ringcode.action.NOTIFY";
+	public static final String PERMISSION	= "org.hoi_polloi.android.ringcode.permission.NOTIFY";
+	public static final String EXTRA_NUMBER	= "number";		// phone number (String)
+	public static final String EXTRA_CODE	= "code";		// Morse code (String)
+	public static final String EXTRA_OUTPUT	= "output";		// output channel (int)
+
+	public static final int MAX_CODE		= 64;		// max. length of requested code
+
+	//=================================================================
+	/**
+	 * <p>Broadcast message received.</p>
+	 * @param context Context - associated context
+	 * @param intent Intent - message parameters (action,category,data)
+	 */
+	@Override
+	public void onReceive (Context context, Intent intent) {
+
+		final long received = SystemClock.uptimeMillis();
+		if (!ACTION.equals (intent.getAction()))
+			return;
+		final Context ctx = context.getApplicationContext();
+		final String code = intent.getStringExtra (EXTRA_CODE);
+		final String number = intent.getStringExtra (EXTRA_NUMBER);
+		final int output = intent.getIntExtra (EXTRA_OUTPUT, Repository.NumberCode.OUTPUT_AUDIO);
+		if (code == null && number == null) {
+			Debug.log ("Notification request without number or code");
+			return;
+		}
+		if (output != Repository.NumberCode.OUTPUT_AUDIO
+				&& output != Repository.NumberCode.OUTPUT_HAPTIC
+				&& output != Repository.NumberCode.OUTPUT_BOTH) {
+			Debug.log ("Notification request with invalid output: " + output);
+			return;
+		}
+		if (number == null && code.length() > MAX_CODE) {
+			Debug.log ("Notification request with code too long: " + code.length());
+			return;
+		}
+		// handle request on worker
+		RingDetector.getWorker().post (new Runnable() {
+			public void run () {
+				if (number != null)
+					MessageDetector.queueFor (ctx, number, received, EventQueue.PRIORITY_APP, "application");
+				else if (Setup.isMessageNotify() && RingDetector.isEnabled (ctx)) {
+					CodeGenerator.Code c = CodeGenerator.forText (code);
+					if (c == null) {
+						Debug.log ("Notification request with unplayable code");
+						return;
+					}
+					EventQueue.getInstance (ctx).post (EventQueue.PRIORITY_APP, c.text, c.program,
+						output, received, "application");
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,543 @@
+//*********************************************************************
+//*   PGMID.        SUFFIX INDEX OF ASSIGNED PHONE NUMBERS.           *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.provider.ContactsContract.PhoneLookup;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>In-memory index of the phone numbers of active assignments. All
+ * numbers are in canonical form (see
+ * {@link PhoneNumber#canonical(CharSequence, DialingPlan, char[])}).</p>
+ * <p>Numbers are first compared exactly through a hash table of the
+ * packed numbers. Assignments with number rules (see
+ * {@link RuleAutomaton}) are tried next. If suffix matching is enabled
+ * as a fallback, a trie keyed on the reversed digits is searched
+ * last.</p>
+ * <p>Assignments can also apply to all numbers of a contact: if such
+ * assignments exist, the caller is resolved to a contact with one
+ * phone lookup first; number-keyed assignments are the fallback.</p>
+ * <p>Two numbers match by suffix if one is a suffix of the other, so
+ * the reversed key of one (see {@link PhoneNumber#toKey(String)}) is a
+ * prefix of the reversed key of the other. A lookup walks the
+ * digits of the caller from the end, so it takes time proportional to
+ * the length of the number, independent of the number of assignments.
+ * The assignment matching the most digits wins; among assignments
+ * with equally long matches the one with the lowest identifier is
+ * returned (same rules as {@link Repository.NumberCode#LOOKUP_URI}).</p>
+ * <p>An index is an immutable snapshot of the repository. The shared
+ * snapshot is rebuilt on a background thread whenever the repository
+ * reports a change and is swapped in through a volatile reference, so
+ * readers on the ring path neither lock nor access the database.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class NumberIndex {
+
+	//=================================================================
+	/**
+	 * <p>Assignment referenced by the index.</p>
+	 */
+	public static final class Entry {
+		public final long id;			// assignment identifier
+		public final String number;		// canonical phone number
+		public final String contact;	// contact lookup key (or null)
+		public final String code;		// Morse code
+		public final int output;		// output channel
+
+		/**
+		 * <p>Constructor: Instantiate new index entry.</p>
+		 * @param id long - assignment identifier
+		 * @param number String - canonical phone number
+		 * @param code String - Morse code
+		 * @param output int - output channel (Repository.NumberCode.OUTPUT_???)
+		 */
+		public Entry (long id, String number, String code, int output) {
+			this (id, number, null, code, output);
+		}
+
+		/**
+		 * <p>Constructor: Instantiate new index entry.</p>
+		 * @param id long - assignment identifier
+		 * @param number String - canonical phone number
+		 * @param contact String - contact lookup key (or null)
+		 * @param code String - Morse code
+		 * @param output int - output channel (Repository.NumberCode.OUTPUT_???)
+		 */
+		public Entry (long id, String number, String contact, String code, int output) {
+			this.id = id;
+			this.number = number;
+			this.contact = contact;
+			this.code = code;
+			this.output = output;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Repository columns for index entries.</p>
+	 */
+	static final String[] COLUMNS = new String[] {
+		Repository.NumberCode._ID, Repository.NumberCode.NUMBER,
+		Repository.NumberCode.CODE, Repository.NumberCode.OUTPUT,
+		Repository.NumberCode.CONTACT
+	};
+
+	//=================================================================
+	/*
+	 * Shared snapshot (rebuilt on repository changes):
+	 */
+	private static volatile NumberIndex shared = null;
+	private static Handler worker = null;		// rebuild thread
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Build the shared snapshot in the background and rebuild it on
+	 * every change of the repository (called once per process).</p>
+	 * @param context Context - application context
+	 */
+	public static synchronized void watch (Context context) {
+		if (worker != null)
+			return;
+		final ContentResolver resolver = context.getContentResolver();
+		final File file = MatchIndexFile.getFile (context);
+		final DialingPlan plan = DialingPlan.getHome (context);
+		HandlerThread thread = new HandlerThread ("RingCode-Index", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		worker = new Handler (thread.getLooper());
+		final Runnable rebuild = new Runnable() {
+			public void run () {
+				NumberIndex idx = load (resolver, plan);
+				shared = idx;
+				Debug.log ("Number index: " + idx.size() + " assignments");
+				// provide index file for cold starts (first run after update)
+				if (!MatchIndexFile.isCurrent (file))
+					MatchIndexFile.write (file, Arrays.asList (idx.entries));
+			}
+		};
+		resolver.registerContentObserver (Repository.NumberCode.CONTENT_URI, true,
+			new ContentObserver (worker) {
+				@Override
+				public void onChange (boolean selfChange) {
+					// coalesce bursts of changes into one rebuild
+					worker.removeCallbacks (rebuild);
+					worker.post (rebuild);
+				}
+			}
+		);
+		worker.post (rebuild);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the shared snapshot.</p>
+	 * @return NumberIndex - current snapshot (or null if not built yet)
+	 */
+	public static NumberIndex getSnapshot () {
+		return shared;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Find best matching active assignment for a phone number. The
+	 * shared snapshot is used if available. Before it is built (right
+	 * after the process has been started) the memory-mapped index file
+	 * is searched; the repository is only queried (for the single best
+	 * row) if the file is not available.</p>
+	 * <p>Assignments of the contact of the caller take precedence; the
+	 * contact is only looked up if the snapshot (or the index file) has
+	 * such assignments. Contacts are matched by their lookup key as
+	 * stored with the assignment.</p>
+	 * @param context Context - associated context
+	 * @param number String - phone number of caller
+	 * @param buf char[] - buffer for canonical number
+	 * @return Entry - best matching assignment (or null)
+	 */
+	public static Entry find (Context context, String number, char[] buf) {
+		DialingPlan plan = DialingPlan.getHome (context);
+		int len = PhoneNumber.canonical (number, plan, buf);
+		if (len <= 0)
+			return null;
+		boolean suffix = Setup.isSuffixMatch();
+		NumberIndex idx = shared;
+		if (idx != null) {
+			// assignment of contact, then of number
+			if (idx.hasContacts()) {
+				Entry e = idx.matchContact (getContactKey (context, number));
+				if (e != null)
+					return e;
+			}
+			return idx.match (buf, len, suffix);
+		}
+		try {
+			return MatchIndexFile.lookup (MatchIndexFile.getFile (context), context, number, buf, len, suffix);
+		}
+		catch (IOException e) {
+			Debug.log ("No match index file: " + e.getMessage());
+		}
+		// no index file: query the repository
+		String key = getContactKey (context, number);
+		if (key != null) {
+			Entry e = query (context, Uri.withAppendedPath (Repository.NumberCode.CONTACT_URI, Uri.encode (key)), plan);
+			if (e != null)
+				return e;
+		}
+		// the repository matches by suffix only
+		Entry e = query (context, Uri.withAppendedPath (Repository.NumberCode.LOOKUP_URI, number), plan);
+		if (e != null && (suffix || e.number.equals (new String (buf, 0, len))))
+			return e;
+		return null;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Query single assignment from the repository.</p>
+	 * @param context Context - associated context
+	 * @param uri Uri - lookup URI
+	 * @param plan DialingPlan - home dialing plan (or null)
+	 * @return Entry - assignment (or null)
+	 */
+	private static Entry query (Context context, Uri uri, DialingPlan plan) {
+		Cursor c = context.getContentResolver().query (uri, COLUMNS, null, null, null);
+		if (c == null)
+			return null;
+		try {
+			if (c.moveToFirst())
+				return toEntry (c, plan);
+		}
+		catch (Exception e) {
+			Debug.log ("Failed: lookup assignment in repository");
+		}
+		finally {
+			// close query on exit
+			c.close();
+		}
+		return null;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get lookup key of the contact with a phone number (one indexed
+	 * query of the contacts provider).</p>
+	 * @param context Context - associated context
+	 * @param number String - phone number
+	 * @return String - contact lookup key (or null)
+	 */
+	public static String getContactKey (Context context, String number) {
+		if (number == null || number.length() == 0)
+			return null;
+		Cursor c = null;
+		try {
+			c = context.getContentResolver().query (
+				Uri.withAppendedPath (PhoneLookup.CONTENT_FILTER_URI, Uri.encode (number)),
+				new String[] { PhoneLookup.LOOKUP_KEY },
+				null, null, null
+			);
+			if (c != null && c.moveToFirst())
+				return c.getString (0);
+		}
+		catch (Exception e) {
+			Debug.log ("Failed to access contact database");
+		}
+		finally {
+			// close query on exit
+			if (c != null)
+				c.close();
+		}
+		return null;
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final Entry[] entries;	// indexed assignments
+	private final int[] next;		// child nodes (10 per node, 0=none)
+	private final int[] term;		// entry ending at node (or -1)
+	private final int[] best;		// best entry in sub-tree (or -1)
+	private int nodes = 1;			// number of nodes (0 is root)
+	private final long[] hashKeys;	// packed numbers (0=empty slot)
+	private final int[] hashVals;	// entry for packed number
+	private final RuleAutomaton rules;	// compiled number rules (or null)
+	private final HashMap<String,Entry> contacts;	// entries by contact key
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Build index for list of assignments. Entries with
+	 * empty numbers are not indexed, entries with number rules are
+	 * compiled into an automaton.</p>
+	 * @param list List&lt;Entry&gt; - assignments
+	 */
+	public NumberIndex (List<Entry> list) {
+		int size = 1;
+		for (Entry e : list)
+			size += e.number.length();
+		next = new int [10 * size];
+		term = new int [size];
+		best = new int [size];
+		for (int n = 0; n < size; n++)
+			term[n] = best[n] = -1;
+		entries = list.toArray (new Entry [list.size()]);
+		List<Entry> patterns = new ArrayList<Entry>();
+		for (int i = 0; i < entries.length; i++) {
+			if (RuleAutomaton.isPattern (entries[i].number))
+				patterns.add (entries[i]);
+			else
+				insert (i);
+		}
+		rules = (patterns.isEmpty() ? null : RuleAutomaton.compile (patterns));
+
+		// contact-keyed entries (lowest identifier per contact)
+		contacts = new HashMap<String,Entry>();
+		for (Entry e : entries) {
+			if (e.contact == null)
+				continue;
+			Entry old = contacts.get (e.contact);
+			if (old == null || e.id < old.id)
+				contacts.put (e.contact, e);
+		}
+
+		// hash table for exact matches (at most half filled)
+		int slots = 2;
+		while (slots < 2 * entries.length)
+			slots <<= 1;
+		hashKeys = new long [slots];
+		hashVals = new int [slots];
+		for (int i = 0; i < entries.length; i++) {
+			long key = PhoneNumber.pack (entries[i].number);
+			if (key == PhoneNumber.INVALID || key == 0)
+				continue;
+			int pos = slot (key);
+			while (hashKeys[pos] != 0 && hashKeys[pos] != key)
+				pos = (pos + 1) & (slots - 1);
+			hashVals[pos] = (hashKeys[pos] == 0 ? i : prefer (hashVals[pos], i));
+			hashKeys[pos] = key;
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get hash table slot for packed number.</p>
+	 * @param key long - packed number
+	 * @return int - start slot
+	 */
+	private int slot (long key) {
+		int h = (int) (key ^ (key >>> 32)) * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & (hashKeys.length - 1);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Add entry to trie.</p>
+	 * @param i int - entry index
+	 */
+	private void insert (int i) {
+		String num = entries[i].number;
+		if (num.length() == 0)
+			return;
+		int node = 0;
+		for (int n = num.length() - 1; n >= 0; n--) {
+			int d = Character.digit (num.charAt (n), 10);
+			if (d < 0)
+				return;
+			int child = next[10*node + d];
+			if (child == 0) {
+				child = nodes++;
+				next[10*node + d] = child;
+			}
+			node = child;
+			best[node] = prefer (best[node], i);
+		}
+		term[node] = prefer (term[node], i);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Select one of two (equally good) entries.</p>
+	 * @param a int - entry index (or -1)
+	 * @param b int - entry index (or -1)
+	 * @return int - entry with lower identifier
+	 */
+	private int prefer (int a, int b) {
+		if (a < 0)
+			return b;
+		if (b < 0)
+			return a;
+		return (entries[b].id < entries[a].id ? b : a);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Find assignment for a phone number: an exact match, the most
+	 * specific matching rule or (if enabled) the best suffix match.</p>
+	 * @param digits char[] - canonical phone number
+	 * @param len int - length of number
+	 * @param suffix boolean - use suffix matching as fallback?
+	 * @return Entry - matching assignment (or null)
+	 */
+	public Entry match (char[] digits, int len, boolean suffix) {
+		long key = PhoneNumber.pack (digits, len);
+		if (key != PhoneNumber.INVALID && key != 0) {
+			int pos = slot (key);
+			while (hashKeys[pos] != 0) {
+				if (hashKeys[pos] == key)
+					return entries[hashVals[pos]];
+				pos = (pos + 1) & (hashKeys.length - 1);
+			}
+		}
+		else if (!suffix && len > 0) {
+			// not packable: compare directly
+			String num = new String (digits, 0, len);
+			for (Entry e : entries)
+				if (e.number.equals (num))
+					return e;
+		}
+		if (rules != null) {
+			Entry e = rules.match (digits, len);
+			if (e != null)
+				return e;
+		}
+		return (suffix ? lookup (digits, len) : null);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Find best suffix match for a phone number.</p>
+	 * @param number String - canonical phone number
+	 * @return Entry - best matching assignment (or null)
+	 */
+	public Entry lookup (String number) {
+		if (number == null)
+			return null;
+		return lookup (number.toCharArray(), number.length());
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Find best suffix match for a phone number in a buffer.</p>
+	 * @param digits char[] - canonical phone number
+	 * @param len int - length of number
+	 * @return Entry - best matching assignment (or null)
+	 */
+	public Entry lookup (char[] digits, int len) {
+		if (len <= 0)
+			return null;
+		int node = 0;
+		int found = -1;
+		for (int n = len - 1; n >= 0; n--) {
+			int d = Character.digit (digits[n], 10);
+			int child = (d < 0 ? 0 : next[10*node + d]);
+			if (child == 0)
+				// longest assigned number that is a suffix of the caller
+				return (found < 0 ? null : entries[found]);
+			node = child;
+			if (term[node] >= 0)
+				found = term[node];
+		}
+		// caller is a suffix of assigned numbers: prefer exact match
+		int i = (term[node] >= 0 ? term[node] : best[node]);
+		return entries[i];
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for contact-keyed assignments.</p>
+	 * @return boolean - index has assignments of contacts?
+	 */
+	public boolean hasContacts () {
+		return !contacts.isEmpty();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Find assignment of a contact.</p>
+	 * @param key String - contact lookup key
+	 * @return Entry - assignment (or null)
+	 */
+	public Entry matchContact (String key) {
+		return (key == null ? null : contacts.get (key));
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of indexed assignments.</p>
+	 * @return int - number of entries
+	 */
+	public int size () {
+		return entries.length;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Build index from repository.</p>
+	 * @param resolver ContentResolver - access to repository
+	 * @param plan DialingPlan - home dialing plan (or null)
+	 * @return NumberIndex - new index
+	 */
+	public static NumberIndex load (ContentResolver resolver, DialingPlan plan) {
+		List<Entry> list = new ArrayList<Entry>();
+		Cursor c = resolver.query (
+			Repository.NumberCode.CONTENT_URI, COLUMNS,
+			Repository.NumberCode.ACTIVE + "=1", null, null
+		);
+		if (c == null)
+			return new NumberIndex (list);
+		try {
+			while (c.moveToNext())
+				list.add (toEntry (c, plan));
+		}
+		catch (Exception e) {
+			Debug.log ("Failed: build number index");
+		}
+		finally {
+			// close query on exit
+			c.close();
+		}
+		return new NumberIndex (list);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Create entry from query result (see {@link #COLUMNS}).</p>
+	 * @param c Cursor - query result
+	 * @param plan DialingPlan - home dialing plan (or null)
+	 * @return Entry - new entry
+	 */
+	static Entry toEntry (Cursor c, DialingPlan plan) {
+		String num = c.getString (1);
+		return new Entry (
+			c.getLong (0),
+			PhoneNumber.canonical (num == null ? "" : num, plan),
+			c.getString (4),
+			c.getString (2),
+			c.getInt (3)
+		);
+	}
+}
@@ -0,0 +1,357 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE OUTPUT USING PRE-RENDERED PCM.         *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Morse code backend that renders the whole message into one PCM
+ * buffer and plays it with a single write to an audio track.</p>
+ * <p>Long messages are streamed instead: the playback thread renders
+ * chunks of fixed size into a {@link SampleRing}, and a writer thread
+ * drains it into the audio track. Memory use does not depend on the
+ * length of the message, and the samples are the same as if the
+ * message had been rendered at once. Both threads sleep while the
+ * ring buffer is full (or empty); the writer thread is kept for all
+ * streams of the backend.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class PcmBackend implements MorseBackend {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int POLL_MS	= 10;		// polling interval for end of playback
+	private static final int GRACE_MS	= 500;		// max. wait beyond expected end
+
+	private static final int STREAM_MIN	= 5 * PcmSynthesizer.SAMPLE_RATE;	// stream messages from 5s
+	private static final int CHUNK		= 1024;		// samples rendered/written at once
+	private static final int RING_SIZE	= 8192;		// samples buffered for the writer
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private PcmSynthesizer synth = null;
+	private int volume = 0;
+	private volatile AudioTrack track = null;
+	private volatile boolean cancelled = false;
+	private MorseProgram last = null;		// last rendered program
+	private short[] lastPcm = null;			// samples of last program
+	private volatile SampleRing ring = null;	// buffer of streamed samples
+	private short[] chunk = null;			// rendered chunk (producer)
+	private Writer writer = null;			// writer thread of streams
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new PCM backend with given
+	 * volume setting.</p>
+	 * @param vol int - speaker volume (0..100)
+	 */
+	public PcmBackend (int vol) {
+		synth = new PcmSynthesizer (vol);
+		volume = vol;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Play compiled Morse code. Rendered samples are taken from
+	 * the shared {@link WaveCache} if available; repeated plays of the
+	 * same program reuse them without any lookup.</p>
+	 * @param prog MorseProgram - compiled code to be played
+	 */
+	public void play (MorseProgram prog) {
+		if (PcmSynthesizer.toSamples (prog.getDuration()) >= STREAM_MIN) {
+			stream (prog);
+			return;
+		}
+		if (prog != last) {
+			String key = prog.getKey() + ':' + volume;
+			short[] pcm = WaveCache.get (key);
+			if (pcm == null) {
+				pcm = synth.render (prog);
+				WaveCache.put (key, pcm);
+			}
+			lastPcm = pcm;
+			last = prog;
+		}
+		play (lastPcm);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Play a buffer of PCM samples and wait for its completion.</p>
+	 * @param pcm short[] - PCM samples
+	 */
+	private void play (short[] pcm) {
+
+		if (pcm.length == 0 || cancelled)
+			return;
+		prepare();
+		if (track == null)
+			return;
+
+		// start playback and hand over the complete buffer
+		int base = track.getPlaybackHeadPosition();
+		track.play();
+		if (!cancelled)
+			track.write (pcm, 0, pcm.length);
+
+		finish (base, pcm.length);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Stream compiled Morse code: render chunks into the ring buffer
+	 * (on the calling thread) while a writer thread hands them over to
+	 * the audio track. Returns after playback has completed.</p>
+	 * @param prog MorseProgram - compiled code to be played
+	 */
+	private void stream (MorseProgram prog) {
+
+		if (cancelled)
+			return;
+		prepare();
+		if (track == null)
+			return;
+		if (writer == null) {
+			ring = new SampleRing (RING_SIZE);
+			chunk = new short [CHUNK];
+			writer = new Writer (ring);
+			writer.start();
+		}
+		ring.clear();
+		if (cancelled)
+			ring.abort();
+		PcmSynthesizer.Stream src = synth.stream (prog);
+
+		// start playback and writer
+		int base = track.getPlaybackHeadPosition();
+		track.play();
+		writer.begin (track);
+
+		// render chunks while there is room in the ring buffer
+		int n;
+		while (!cancelled && (n = src.next (chunk)) > 0) {
+			int off = 0;
+			while (!cancelled && off < n) {
+				int w = ring.write (chunk, off, n - off);
+				if (w == 0)
+					ring.awaitRoom();
+				off += w;
+			}
+		}
+		ring.close();
+		writer.await();
+		finish (base, src.getLength());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Writer thread of the streams: for each stream it drains the
+	 * ring buffer into the audio track until the stream is closed or
+	 * cancelled, then waits for the next stream.</p>
+	 */
+	private final class Writer extends Thread {
+
+		private final SampleRing ring;		// samples to be written
+		private final short[] buf = new short [CHUNK];
+		private AudioTrack out = null;		// audio output of stream
+		private boolean busy = false;		// stream in progress?
+		private boolean quit = false;		// terminate thread?
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Constructor: Instantiate new writer.</p>
+		 * @param ring SampleRing - samples to be written
+		 */
+		Writer (SampleRing ring) {
+			super ("RingCode-Audio");
+			this.ring = ring;
+			setDaemon (true);
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Start draining a new stream.</p>
+		 * @param track AudioTrack - audio output
+		 */
+		synchronized void begin (AudioTrack track) {
+			out = track;
+			busy = true;
+			notifyAll();
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Wait until the stream has been drained.</p>
+		 */
+		synchronized void await () {
+			while (busy) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Debug.log ("Failed: wait for audio writer");
+					return;
+				}
+			}
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Terminate the thread.</p>
+		 */
+		synchronized void terminate () {
+			quit = true;
+			notifyAll();
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Drain streams (blocking writes pace the thread).</p>
+		 */
+		public void run () {
+			Process.setThreadPriority (Process.THREAD_PRIORITY_URGENT_AUDIO);
+			while (true) {
+				AudioTrack track;
+				synchronized (this) {
+					while (!busy && !quit) {
+						try {
+							wait();
+						}
+						catch (InterruptedException e) {
+							// check state again
+						}
+					}
+					if (quit)
+						return;
+					track = out;
+				}
+				int n;
+				while (!cancelled && (n = ring.read (buf, 0, CHUNK)) >= 0) {
+					if (n == 0)
+						ring.awaitData();
+					else
+						track.write (buf, 0, n);
+				}
+				synchronized (this) {
+					busy = false;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Wait for the end of playback and stop the track.</p>
+	 * @param base int - playback head position at start
+	 * @param count int - number of samples written
+	 */
+	private void finish (int base, int count) {
+		long limit = System.currentTimeMillis()
+			+ count * 1000L / PcmSynthesizer.SAMPLE_RATE + GRACE_MS;
+		while (!cancelled && track.getPlaybackHeadPosition() - base < count) {
+			if (System.currentTimeMillis() > limit)
+				break;
+			try {
+				Thread.sleep (POLL_MS);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		try {
+			track.stop();
+			track.flush();
+		}
+		catch (IllegalStateException e) {
+			Debug.log ("Failed: stop audio track");
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Create the audio track (if not done yet).</p>
+	 */
+	public void prepare () {
+		if (track != null)
+			return;
+		int size = AudioTrack.getMinBufferSize (
+			PcmSynthesizer.SAMPLE_RATE,
+			AudioFormat.CHANNEL_OUT_MONO,
+			AudioFormat.ENCODING_PCM_16BIT
+		);
+		AudioTrack t = new AudioTrack (
+			AudioManager.STREAM_ALARM,
+			PcmSynthesizer.SAMPLE_RATE,
+			AudioFormat.CHANNEL_OUT_MONO,
+			AudioFormat.ENCODING_PCM_16BIT,
+			size,
+			AudioTrack.MODE_STREAM
+		);
+		if (t.getState() != AudioTrack.STATE_INITIALIZED) {
+			Debug.log ("Failed: initialize audio track");
+			t.release();
+			return;
+		}
+		track = t;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Stop playback: pausing the track silences it at once and
+	 * stopping it releases a blocked write.</p>
+	 */
+	public void cancel () {
+		cancelled = true;
+		SampleRing r = ring;
+		if (r != null)
+			r.abort();
+		AudioTrack t = track;
+		if (t != null) {
+			try {
+				t.pause();
+				t.flush();
+				t.stop();
+			}
+			catch (IllegalStateException e) {
+				Debug.log ("Failed: cancel audio track");
+			}
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Release the audio track.</p>
+	 */
+	public void release () {
+		if (writer != null) {
+			writer.terminate();
+			writer = null;
+		}
+		if (track != null) {
+			track.release();
+			track = null;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE PCM SYNTHESIZER.                       *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Render a Morse code message into a single buffer of 16-bit mono
+ * PCM samples, or stream it in chunks of fixed size (see
+ * {@link Stream}). Both produce identical samples.</p>
+ * <p>Element boundaries are computed from the absolute start time of
+ * the element, so rounding errors do not accumulate over the message.
+ * Every tone is shaped with a raised-cosine attack and release to
+ * avoid clicks.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class PcmSynthesizer {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final int SAMPLE_RATE	= 22050;	// samples per second
+	public static final int FREQUENCY	= 800;		// tone frequency (Hz)
+
+	private static final int TABLE_BITS	= 10;		// log2 of sine table size
+	private static final int RAMP_MS	= 5;		// attack/release time (ms)
+
+	// phase increment per sample (32-bit fixed point)
+	private static final int PHASE_INC = (int) (((long) FREQUENCY << 32) / SAMPLE_RATE);
+
+	// precomputed sine period (full scale)
+	private static final short[] SINE = new short [1 << TABLE_BITS];
+	// precomputed attack envelope (0..32767)
+	private static final short[] RAMP = new short [SAMPLE_RATE * RAMP_MS / 1000];
+
+	static {
+		for (int n = 0; n < SINE.length; n++)
+			SINE[n] = (short) Math.round (32767 * Math.sin (2 * Math.PI * n / SINE.length));
+		for (int n = 0; n < RAMP.length; n++)
+			RAMP[n] = (short) Math.round (32767 * 0.5 * (1 - Math.cos (Math.PI * n / RAMP.length)));
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private int amplitude = 0;		// peak amplitude of tone
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new synthesizer with given
+	 * volume setting.</p>
+	 * @param vol int - speaker volume (0..100)
+	 */
+	public PcmSynthesizer (int vol) {
+		amplitude = 32767 * Math.max (0, Math.min (100, vol)) / 100;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Render compiled Morse code.</p>
+	 * @param prog MorseProgram - compiled code
+	 * @return short[] - PCM samples
+	 */
+	public short[] render (MorseProgram prog) {
+
+		short[] pcm = new short [toSamples (prog.getDuration())];
+		long t = 0;
+		int len = prog.size();
+		for (int i = 0; i < len; i += 2) {
+			int on = prog.get (i);
+			tone (pcm, toSamples (t), toSamples (t + on), 0, pcm.length);
+			t += on + prog.get (i+1);
+		}
+		return pcm;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Start streaming compiled Morse code.</p>
+	 * @param prog MorseProgram - compiled code
+	 * @return Stream - sample stream of code
+	 */
+	public Stream stream (MorseProgram prog) {
+		return new Stream (prog);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Sample stream of a compiled code: renders consecutive windows
+	 * of the samples {@link #render(MorseProgram)} would return. Only
+	 * the position in the program is kept between windows.</p>
+	 */
+	public final class Stream {
+
+		private final MorseProgram prog;	// compiled code
+		private final int total;			// number of samples
+		private int pos = 0;				// index of next sample
+		private int elem = 0;				// first element not completed
+		private long time = 0;				// start of that element (ms)
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Constructor: Instantiate new stream.</p>
+		 * @param prog MorseProgram - compiled code
+		 */
+		Stream (MorseProgram prog) {
+			this.prog = prog;
+			total = toSamples (prog.getDuration());
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Render next window of samples.</p>
+		 * @param buf short[] - buffer for samples
+		 * @return int - number of samples rendered (0 at end of stream)
+		 */
+		public int next (short[] buf) {
+			int count = Math.min (buf.length, total - pos);
+			if (count <= 0)
+				return 0;
+			int end = pos + count;
+			for (int n = 0; n < count; n++)
+				buf[n] = 0;
+			long t = time;
+			int len = prog.size();
+			for (int i = elem; i < len; i += 2) {
+				int on = prog.get (i);
+				int from = toSamples (t);
+				if (from >= end)
+					break;
+				int to = toSamples (t + on);
+				if (to > pos)
+					tone (buf, from, to, pos, end);
+				t += on + prog.get (i+1);
+				// skip completed elements in the next window
+				if (to <= end) {
+					elem = i + 2;
+					time = t;
+				}
+			}
+			pos = end;
+			return count;
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get length of stream.</p>
+		 * @return int - number of samples
+		 */
+		public int getLength () {
+			return total;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Render (part of) a shaped tone into a window of samples.</p>
+	 * @param pcm short[] - sample buffer (starts with sample 'base')
+	 * @param from int - index of first sample of tone
+	 * @param to int - index after last sample of tone
+	 * @param base int - index of first sample in buffer
+	 * @param end int - index after last sample in buffer
+	 */
+	private void tone (short[] pcm, int from, int to, int base, int end) {
+
+		int len = to - from;
+		int ramp = Math.min (RAMP.length, len / 2);
+		int first = Math.max (0, base - from);
+		int last = Math.min (len, end - from);
+		// phase wraps around like the accumulated increments
+		int phase = first * PHASE_INC;
+		for (int n = first; n < last; n++) {
+			int s = (SINE[phase >>> (32 - TABLE_BITS)] * amplitude) >> 15;
+			// apply envelope on attack and release
+			int r = Math.min (n, len - 1 - n);
+			if (r < ramp)
+				s = (s * RAMP[r * RAMP.length / ramp]) >> 15;
+			pcm[from + n - base] = (short) s;
+			phase += PHASE_INC;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Convert a time offset into a sample index.</p>
+	 * @param ms long - time offset in milliseconds
+	 * @return int - sample index
+	 */
+	public static int toSamples (long ms) {
+		return (int) (ms * SAMPLE_RATE / 1000);
+	}
+}
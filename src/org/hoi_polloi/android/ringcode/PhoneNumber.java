@@ -21,6 +21,15 @@ package org.hoi_polloi.android.ringcode;
  */
 public class PhoneNumber {
 
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final int MAX_PACKED = 15;	// max. digits in packed number
+	public static final long INVALID = -1;		// number can't be packed
+
+	private static final int COUNT_SHIFT = 60;	// position of digit count
+
 	//=================================================================
 	/**
 	 * <p>Normalize (compacts) phone number for comparison.</p>
@@ -28,47 +37,118 @@ public class PhoneNumber {
 	 * @return String - normalized phone number
 	 */
 	public static String normalize (String number) {
-		
-		StringBuffer buf = new StringBuffer();
+		char[] buf = new char [number.length()];
+		return new String (buf, 0, normalize (number, buf));
+	}
 
-		// handle number prefix:
-		// 	- strip leading '0' or '+' from numbers
-		if (number.startsWith ("00")) {
-			number = number.substring (2);
-		}
-		else if (number.startsWith ("+")) {
-			number = number.substring (1);
-		}
-		else if (number.startsWith ("0")) {
-			number = number.substring (1);
-		}
-		
-		// strip non-digit characters
+	//=================================================================
+	/**
+	 * <p>Normalize phone number into a buffer without allocating
+	 * memory: all digits of the number without leading zeros (this
+	 * also removes international "00" and trunk "0" prefixes; a "+"
+	 * is dropped as a non-digit).</p>
+	 * @param number CharSequence - phone number
+	 * @param buf char[] - buffer for normalized number
+	 * @return int - length of normalized number (-1 if buffer is too small)
+	 */
+	public static int normalize (CharSequence number, char[] buf) {
 		int count = number.length();
-		boolean init = true;
+		int len = 0;
 		for (int n = 0; n < count; n++) {
 			char ch = number.charAt (n);
-			if (!Character.isDigit(ch) || (init && ch == '0'))
+			if (!Character.isDigit (ch) || (len == 0 && ch == '0'))
 				continue;
-			buf.append (ch);
-			init = false;
+			if (len == buf.length)
+				return -1;
+			buf[len++] = ch;
 		}
-		return buf.toString();
+		return len;
 	}
 
 	//=================================================================
 	/**
-	 * <p>Compare two normalized phone numbers.</p>
-	 * @param num1 String
-	 * @param num2 String
-	 * @return boolean - phone numbers match
+	 * <p>Get canonical form of phone number for matching: the
+	 * international (E.164) number if it can be determined with the
+	 * dialing plan, the normalized number otherwise.</p>
+	 * @param number CharSequence - phone number
+	 * @param plan DialingPlan - home dialing plan (or null)
+	 * @param buf char[] - buffer for canonical number
+	 * @return int - length of canonical number (-1 if buffer is too small)
+	 */
+	public static int canonical (CharSequence number, DialingPlan plan, char[] buf) {
+		int len = (plan == null ? -1 : plan.toE164 (number, buf));
+		return (len < 0 ? normalize (number, buf) : len);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get canonical form of phone number (or number rule, see
+	 * {@link RuleAutomaton#canonical(String, DialingPlan)}) for
+	 * matching.</p>
+	 * @param number String - phone number or rule
+	 * @param plan DialingPlan - home dialing plan (or null)
+	 * @return String - canonical number
+	 */
+	public static String canonical (String number, DialingPlan plan) {
+		if (RuleAutomaton.isPattern (number))
+			return RuleAutomaton.canonical (number, plan);
+		char[] buf = new char [Math.max (number.length(), DialingPlan.MAX_DIGITS)];
+		return new String (buf, 0, canonical (number, plan, buf));
+	}
+
+	//=================================================================
+	/**
+	 * <p>Pack normalized phone number into a long: the number of digits
+	 * is stored in the upper four bits, the numeric value below. Packed
+	 * numbers are equal if and only if the numbers are equal; they are
+	 * the keys of exact matches in {@link NumberIndex}.</p>
+	 * @param number CharSequence - normalized phone number
+	 * @return long - packed number (INVALID if longer than MAX_PACKED
+	 * digits or containing non-ASCII digits)
+	 */
+	public static long pack (CharSequence number) {
+		int len = number.length();
+		if (len > MAX_PACKED)
+			return INVALID;
+		long val = 0;
+		for (int n = 0; n < len; n++) {
+			char ch = number.charAt (n);
+			if (ch < '0' || ch > '9')
+				return INVALID;
+			val = 10 * val + (ch - '0');
+		}
+		return ((long) len << COUNT_SHIFT) | val;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Pack normalized phone number in a buffer into a long.</p>
+	 * @param digits char[] - normalized phone number
+	 * @param len int - length of number
+	 * @return long - packed number (INVALID if not packable)
+	 */
+	public static long pack (char[] digits, int len) {
+		if (len < 0 || len > MAX_PACKED)
+			return INVALID;
+		long val = 0;
+		for (int n = 0; n < len; n++) {
+			char ch = digits[n];
+			if (ch < '0' || ch > '9')
+				return INVALID;
+			val = 10 * val + (ch - '0');
+		}
+		return ((long) len << COUNT_SHIFT) | val;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get lookup key of phone number: the digits of the normalized
+	 * number in reverse order, so numbers with a common suffix share
+	 * a common prefix.</p>
+	 * @param number String - phone number
+	 * @return String - lookup key
 	 */
-	public static boolean isSame (String num1, String num2) {
-		
-		if (num1.endsWith (num2))
-			return true;
-		if (num2.endsWith (num1))
-			return true;
-		return false;
+	public static String toKey (String number) {
+		return new StringBuilder (normalize (number)).reverse().toString();
 	}
 }
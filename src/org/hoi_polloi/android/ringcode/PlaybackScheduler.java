@@ -0,0 +1,264 @@
+//*********************************************************************
+//*   PGMID.        SHARED PLAYBACK SCHEDULER.                        *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Single long-lived thread that runs all Morse code notifications.
+ * At most one notification is active at any time; starting a new one
+ * cancels the previous one.</p>
+ * <p>Stopping a notification removes its pending repeats and silences
+ * the output backend directly from the calling thread. The time until
+ * the playback thread is free again is recorded as stop latency.</p>
+ * <p>While the scheduler is "warm" (ringer silent and RingCode
+ * active) a player with allocated output is held ready, so the first
+ * tone of a notification does not wait for the audio setup.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class PlaybackScheduler {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final long START_BUDGET = 100;	// max. start latency (ms)
+
+	//=================================================================
+	/*
+	 * Singleton instance:
+	 */
+	private static PlaybackScheduler instance = null;
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the shared scheduler (started on first use).</p>
+	 * @return PlaybackScheduler - scheduler instance
+	 */
+	public static synchronized PlaybackScheduler getInstance () {
+		if (instance == null)
+			instance = new PlaybackScheduler();
+		return instance;
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private Handler handler = null;				// playback thread queue
+	private MorseNotifier current = null;		// active notification
+	private volatile long lastLatency = 0;		// last stop latency (ms)
+	private volatile long maxLatency = 0;		// max. stop latency (ms)
+	private volatile long startLatency = 0;		// last start latency (ms)
+	private boolean warm = false;				// keep a player ready?
+	private Morse prepared = null;				// player held ready
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Start the playback thread.</p>
+	 */
+	private PlaybackScheduler () {
+		HandlerThread thread = new HandlerThread ("RingCode-Playback", Process.THREAD_PRIORITY_URGENT_AUDIO);
+		thread.start();
+		handler = new Handler (thread.getLooper());
+	}
+
+	//=================================================================
+	/**
+	 * <p>Start a notification after given delay; a different active
+	 * notification is cancelled first.</p>
+	 * @param job MorseNotifier - notification to run
+	 * @param delay long - delay before first playback (in ms)
+	 */
+	public synchronized void start (MorseNotifier job, long delay) {
+		if (current != null && current != job)
+			cancel (current);
+		current = job;
+		handler.postDelayed (job, delay);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Settings have changed: replace a prepared player of a running
+	 * scheduler.</p>
+	 */
+	public static synchronized void settingsChanged () {
+		if (instance != null)
+			instance.refresh();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Schedule the next run of a notification (called from the
+	 * playback thread).</p>
+	 * @param job MorseNotifier - notification to run
+	 * @param delay long - delay before next playback (in ms)
+	 */
+	public void repeat (MorseNotifier job, long delay) {
+		handler.postDelayed (job, delay);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Cancel a notification: drop pending runs, silence the output
+	 * and release the player once the playback thread is free.</p>
+	 * @param job MorseNotifier - notification to cancel
+	 */
+	public synchronized void cancel (final MorseNotifier job) {
+		final long start = SystemClock.uptimeMillis();
+		handler.removeCallbacks (job);
+		job.cancelOutput();
+		handler.postAtFrontOfQueue (new Runnable() {
+			public void run () {
+				long latency = SystemClock.uptimeMillis() - start;
+				lastLatency = latency;
+				if (latency > maxLatency)
+					maxLatency = latency;
+				Debug.log ("Playback stopped after " + latency + " ms");
+				job.finish();
+				// hold a new player ready for the next notification
+				prepareTask.run();
+			}
+		});
+		if (current == job)
+			current = null;
+	}
+
+	//=================================================================
+	//	Pre-warmed player
+	//=================================================================
+	/**
+	 * <p>Keep a prepared player ready for the next notification.</p>
+	 */
+	public synchronized void warmUp () {
+		warm = true;
+		if (prepared == null)
+			handler.post (prepareTask);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Release the prepared player and stop holding one.</p>
+	 */
+	public synchronized void coolDown () {
+		warm = false;
+		discard();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Settings have changed: replace a prepared player.</p>
+	 */
+	public synchronized void refresh () {
+		discard();
+		if (warm)
+			handler.post (prepareTask);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Release prepared player on the playback thread.</p>
+	 */
+	private void discard () {
+		final Morse p = prepared;
+		prepared = null;
+		if (p != null) {
+			handler.post (new Runnable() {
+				public void run () {
+					p.release();
+				}
+			});
+		}
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get player for a new notification: the prepared player if
+	 * available, a new one otherwise. A replacement is prepared after
+	 * the notification is finished.</p>
+	 * @return Morse - player with current settings
+	 */
+	public synchronized Morse takePlayer () {
+		Morse p = prepared;
+		prepared = null;
+		if (p == null)
+			p = new Morse (Setup.getSpeed(), Setup.getVolume());
+		return p;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Create and prepare a player on the playback thread.</p>
+	 */
+	private final Runnable prepareTask = new Runnable() {
+		public void run () {
+			synchronized (PlaybackScheduler.this) {
+				if (!warm || prepared != null)
+					return;
+			}
+			Morse p = new Morse (Setup.getSpeed(), Setup.getVolume());
+			p.prepare();
+			synchronized (PlaybackScheduler.this) {
+				if (warm && prepared == null) {
+					prepared = p;
+					return;
+				}
+			}
+			p.release();
+		}
+	};
+
+	//=================================================================
+	/**
+	 * <p>Record time from broadcast to first tone of a notification
+	 * (without configured initial delay).</p>
+	 * @param latency long - start latency (ms)
+	 */
+	void recordStart (long latency) {
+		startLatency = latency;
+		if (latency > START_BUDGET)
+			Debug.log ("Playback started late: " + latency + " ms");
+		else
+			Debug.log ("Playback started after " + latency + " ms");
+	}
+
+	//=================================================================
+	//	Getter methods
+	//=================================================================
+	/**
+	 * <p>Get latency of the last stop request.</p>
+	 * @return long - time from cancel to free playback thread (ms)
+	 */
+	public long getLastStopLatency () {
+		return lastLatency;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get maximum latency of all stop requests.</p>
+	 * @return long - time from cancel to free playback thread (ms)
+	 */
+	public long getMaxStopLatency () {
+		return maxLatency;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get start latency of the last notification.</p>
+	 * @return long - time from broadcast to first tone (ms)
+	 */
+	public long getStartLatency () {
+		return startLatency;
+	}
+}
@@ -0,0 +1,136 @@
+//*********************************************************************
+//*   PGMID.        REPEAT SCHEDULE FOR MORSE CODE NOTIFICATIONS.     *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Immutable schedule for the repetitions of a notification.</p>
+ * <p>The first code is played after the initial delay (may be zero).
+ * The silence between two repetitions is proportional to the duration
+ * of the compiled code, so short codes are repeated more often than
+ * long ones. After a number of repetitions the silence is doubled on
+ * every further repetition (back-off) up to an upper limit.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public final class RepeatPolicy {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	public static final int MIN_GAP = 1000;		// min. silence between codes (ms)
+	public static final int MAX_GAP = 15000;	// max. silence after back-off (ms)
+	public static final int MESSAGE_REPEATS = 2;	// codes played for a message
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final int delay;		// delay before first code (ms)
+	private final int gap;			// silence in percent of code duration
+	private final int backoff;		// repetitions before back-off (0=never)
+	private final int limit;		// max. number of codes (0=unlimited)
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new repeat schedule.</p>
+	 * @param delay int - delay before first code (ms)
+	 * @param gap int - silence between codes (percent of code duration)
+	 * @param backoff int - repetitions before the silence is stretched (0=never)
+	 */
+	public RepeatPolicy (int delay, int gap, int backoff) {
+		this (delay, gap, backoff, 0);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Constructor: Instantiate new repeat schedule with a limited
+	 * number of codes.</p>
+	 * @param delay int - delay before first code (ms)
+	 * @param gap int - silence between codes (percent of code duration)
+	 * @param backoff int - repetitions before the silence is stretched (0=never)
+	 * @param limit int - max. number of codes (0=unlimited)
+	 */
+	public RepeatPolicy (int delay, int gap, int backoff, int limit) {
+		this.delay = Math.max (0, delay);
+		this.gap = Math.max (0, gap);
+		this.backoff = Math.max (0, backoff);
+		this.limit = Math.max (0, limit);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get schedule from the configuration.</p>
+	 * @return RepeatPolicy - configured repeat schedule
+	 */
+	public static RepeatPolicy fromSetup () {
+		return new RepeatPolicy (Setup.getDelay(), Setup.getGap(), Setup.getBackoff());
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get schedule for messages: the configured schedule, limited to
+	 * a few codes.</p>
+	 * @return RepeatPolicy - repeat schedule for messages
+	 */
+	public static RepeatPolicy forMessage () {
+		return new RepeatPolicy (Setup.getDelay(), Setup.getGap(), 0, MESSAGE_REPEATS);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get delay before the first code.</p>
+	 * @return long - delay (ms)
+	 */
+	public long getInitialDelay () {
+		return delay;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get max. number of codes.</p>
+	 * @return int - number of codes (0=unlimited)
+	 */
+	public int getLimit () {
+		return limit;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if all codes of a limited schedule are played.</p>
+	 * @param played int - number of codes played so far
+	 * @return boolean - schedule is completed?
+	 */
+	public boolean isDone (int played) {
+		return limit > 0 && played >= limit;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get time between the start of a code and the start of its
+	 * next repetition.</p>
+	 * @param code MorseProgram - compiled code
+	 * @param played int - number of codes played so far (1 = first)
+	 * @return long - time from start to start (ms)
+	 */
+	public long getPeriod (MorseProgram code, int played) {
+		int dur = code.getDuration();
+		long silence = Math.max (MIN_GAP, (long) dur * gap / 100);
+		if (backoff > 0 && played > backoff) {
+			int steps = Math.min (played - backoff, 16);
+			silence = Math.max (silence, Math.min (MAX_GAP, silence << steps));
+		}
+		return dur + silence;
+	}
+}
@@ -14,13 +14,16 @@ package org.hoi_polloi.android.ringcode;
 ///////////////////////////////////////////////////////////////////////
 //Import external declarations
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import android.content.ContentProvider;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -57,6 +60,17 @@ public class Repository extends ContentProvider {
 		 * <p>The content:// style URL for this table</p>
 		 */
 		public static final Uri CONTENT_URI = Uri.parse ("content://" + AUTHORITY + "/ringcode");
+		/**
+		 * <p>The content:// style URL for the best active assignment of a
+		 * phone number (append the number as path segment).</p>
+		 */
+		public static final Uri LOOKUP_URI = Uri.parse ("content://" + AUTHORITY + "/ringcode/lookup");
+		/**
+		 * <p>The content:// style URL for the active assignment of a
+		 * contact (append the encoded contact lookup key as path
+		 * segment).</p>
+		 */
+		public static final Uri CONTACT_URI = Uri.parse ("content://" + AUTHORITY + "/ringcode/contact");
 
 
 		//-------------------------------------------------------------
@@ -94,6 +108,31 @@ public class Repository extends ContentProvider {
 		 * <P>Type: TEXT</P>
 		 */
 		public static final String NAME = "name";
+		/**
+		 * The output channel of the notification (OUTPUT_???)
+		 * <P>Type: INTEGER</P>
+		 */
+		public static final String OUTPUT = "output";
+		/**
+		 * The reversed digits of the normalized phone number (maintained
+		 * by the repository, see {@link PhoneNumber#toKey(String)}; NULL
+		 * for number rules)
+		 * <P>Type: TEXT</P>
+		 */
+		public static final String KEY = "number_key";
+		/**
+		 * The lookup key of the contact if the assignment applies to all
+		 * numbers of a contact (or NULL)
+		 * <P>Type: TEXT</P>
+		 */
+		public static final String CONTACT = "contact";
+
+		//-------------------------------------------------------------
+		//	Output channels
+		//-------------------------------------------------------------
+		public static final int OUTPUT_AUDIO	= 0;	// Morse code tones
+		public static final int OUTPUT_HAPTIC	= 1;	// vibration pattern
+		public static final int OUTPUT_BOTH		= 2;	// tones and vibration
 
 		//-------------------------------------------------------------
 		/**
@@ -112,6 +151,8 @@ public class Repository extends ContentProvider {
 		Repository.NumberCode.CODE,			// 2 - assigned morse code
 		Repository.NumberCode.ACTIVE,		// 3 - active flag
 		Repository.NumberCode.NAME,			// 4 - associated name
+		Repository.NumberCode.OUTPUT,		// 5 - output channel
+		Repository.NumberCode.CONTACT,		// 6 - contact lookup key
 	};
 
 	// column identifiers
@@ -119,6 +160,8 @@ public class Repository extends ContentProvider {
 	public static final int	COLUMN_CODE			= 2;
 	public static final int	COLUMN_ACTIVE		= 3;
 	public static final int	COLUMN_NAME			= 4;
+	public static final int	COLUMN_OUTPUT		= 5;
+	public static final int	COLUMN_CONTACT		= 6;
 
 	/**
 	 * The default sort order for this table
@@ -127,11 +170,13 @@ public class Repository extends ContentProvider {
 
 	// database parameters
 	private static final String	DATABASE_NAME		= "ringcode.db";
-	private static final int	DATABASE_VERSION	= 3;
+	private static final int	DATABASE_VERSION	= 6;
 	private static final String	TABLE_NAME			= "assignments";
 
 	private static final int NUMBERCODE		= 1;
 	private static final int NUMBERCODE_ID	= 2;
+	private static final int NUMBERCODE_LOOKUP = 3;
+	private static final int NUMBERCODE_CONTACT = 4;
 
 	private static HashMap<String, String> numbercodePrjMap;
 
@@ -165,8 +210,26 @@ public class Repository extends ContentProvider {
 					+ NumberCode.NUMBER + " TEXT,"
 					+ NumberCode.CODE + " TEXT,"
 					+ NumberCode.ACTIVE + " INTEGER,"
-					+ NumberCode.NAME + " TEXT"
+					+ NumberCode.NAME + " TEXT,"
+					+ NumberCode.OUTPUT + " INTEGER DEFAULT " + NumberCode.OUTPUT_AUDIO + ","
+					+ NumberCode.KEY + " TEXT,"
+					+ NumberCode.CONTACT + " TEXT"
 				+ ");");
+			createIndex (db);
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Create indices for number and contact lookups. Partial
+		 * indices are not supported by older SQLite versions, so the
+		 * active flag is the leading column of the number index.</p>
+		 * @param db SQLiteDatabase - database instance
+		 */
+		private void createIndex (SQLiteDatabase db) {
+			db.execSQL ("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_lookup ON "
+				+ TABLE_NAME + " (" + NumberCode.ACTIVE + "," + NumberCode.KEY + ");");
+			db.execSQL ("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_contact ON "
+				+ TABLE_NAME + " (" + NumberCode.CONTACT + ");");
 		}
 
 		//-------------------------------------------------------------
@@ -178,10 +241,36 @@ public class Repository extends ContentProvider {
 		 */
 		@Override
 		public void onUpgrade (SQLiteDatabase db, int oldVersion, int newVersion) {
-			// drop old tables
-			db.execSQL ("DROP TABLE IF EXISTS " + TABLE_NAME + ";");
-			// create new tables
-			onCreate (db);
+			if (oldVersion < 3) {
+				// drop old tables
+				db.execSQL ("DROP TABLE IF EXISTS " + TABLE_NAME + ";");
+				// create new tables
+				onCreate (db);
+				return;
+			}
+			// keep assignments of previous versions
+			if (oldVersion < 4)
+				db.execSQL ("ALTER TABLE " + TABLE_NAME + " ADD COLUMN "
+					+ NumberCode.OUTPUT + " INTEGER DEFAULT " + NumberCode.OUTPUT_AUDIO + ";");
+			if (oldVersion < 5) {
+				db.execSQL ("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + NumberCode.KEY + " TEXT;");
+				Cursor c = db.query (TABLE_NAME, new String[] { NumberCode._ID, NumberCode.NUMBER },
+					null, null, null, null, null);
+				try {
+					while (c.moveToNext()) {
+						String num = c.getString (1);
+						ContentValues values = new ContentValues();
+						values.put (NumberCode.KEY, PhoneNumber.toKey (num == null ? "" : num));
+						db.update (TABLE_NAME, values, NumberCode._ID + "=" + c.getLong (0), null);
+					}
+				}
+				finally {
+					c.close();
+				}
+			}
+			if (oldVersion < 6)
+				db.execSQL ("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + NumberCode.CONTACT + " TEXT;");
+			createIndex (db);
 		}
 	}
 
@@ -228,6 +317,21 @@ public class Repository extends ContentProvider {
 				qb.appendWhere (NumberCode._ID + "=" + uri.getPathSegments().get(1));
 				break;
 
+			case NUMBERCODE_LOOKUP:
+				qb.setProjectionMap (numbercodePrjMap);
+				return lookup (qb, uri, projection, selection, selectionArgs);
+
+			case NUMBERCODE_CONTACT: {
+				// active assignment of contact (lowest identifier)
+				qb.setProjectionMap (numbercodePrjMap);
+				qb.appendWhere (NumberCode.ACTIVE + "=1 AND " + NumberCode.CONTACT + "=");
+				qb.appendWhereEscapeString (uri.getLastPathSegment());
+				SQLiteDatabase db = dbHelper.getReadableDatabase();
+				Cursor c = qb.query (db, projection, selection, selectionArgs, null, null, NumberCode._ID + " ASC", "1");
+				c.setNotificationUri (getContext().getContentResolver(), NumberCode.CONTENT_URI);
+				return c;
+			}
+
 			default:
 				throw new IllegalArgumentException("Unknown URI " + uri);
 		}
@@ -249,6 +353,96 @@ public class Repository extends ContentProvider {
 		return c;
 	}
 
+	//=================================================================
+	/**
+	 * <p>Query best active assignment for a phone number: the one that
+	 * matches most digits by suffix (see {@link NumberIndex#lookup(char[], int)}),
+	 * an exact match and the lowest identifier on ties.</p>
+	 * <p>In reversed keys a number that is a suffix of the caller is a
+	 * prefix of the caller key, and the caller is a suffix of all numbers
+	 * whose keys start with the caller key. Both sets are selected by
+	 * key comparisons that use the index.</p>
+	 * @param qb SQLiteQueryBuilder - prepared query builder
+	 * @param uri Uri - lookup URI (phone number as last path segment)
+	 * @param projection String[] - columns for query
+	 * @param selection String - additional SQL WHERE clause
+	 * @param selectionArgs String[] - selection parameters
+	 * @return Cursor - query result (at most one row)
+	 */
+	private Cursor lookup (SQLiteQueryBuilder qb, Uri uri, String[] projection, String selection, String[] selectionArgs) {
+
+		String key = PhoneNumber.toKey (uri.getLastPathSegment());
+		int len = key.length();
+		int extra = (selectionArgs == null ? 0 : selectionArgs.length);
+		String[] args = new String [len + 2 + extra];
+		StringBuilder where = new StringBuilder();
+		where.append (NumberCode.ACTIVE + "=1 AND ");
+		if (len == 0)
+			where.append ("0");
+		else {
+			// numbers that are a suffix of the caller
+			where.append ("(" + NumberCode.KEY + " IN (");
+			for (int n = 0; n < len; n++) {
+				where.append (n > 0 ? ",?" : "?");
+				args[n] = key.substring (0, n+1);
+			}
+			// numbers with the caller as suffix (':' follows '9')
+			where.append (") OR (" + NumberCode.KEY + ">=? AND " + NumberCode.KEY + "<?))");
+			args[len] = key;
+			args[len+1] = key + ':';
+		}
+		qb.appendWhere (where.toString());
+		if (len == 0)
+			args = selectionArgs;
+		else if (extra > 0)
+			System.arraycopy (selectionArgs, 0, args, len + 2, extra);
+
+		String orderBy = "MIN(LENGTH(" + NumberCode.KEY + ")," + len + ") DESC,"
+			+ "(" + NumberCode.KEY + "=" + DatabaseUtils.sqlEscapeString (key) + ") DESC,"
+			+ NumberCode._ID + " ASC";
+		SQLiteDatabase db = dbHelper.getReadableDatabase();
+		Cursor c = qb.query (db, projection, selection, args, null, null, orderBy, "1");
+		c.setNotificationUri (getContext().getContentResolver(), NumberCode.CONTENT_URI);
+		return c;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Set maintained columns for changed entry data.</p>
+	 * @param values ContentValues - entry data
+	 */
+	private static void setKey (ContentValues values) {
+		if (values.containsKey (NumberCode.NUMBER)) {
+			String num = values.getAsString (NumberCode.NUMBER);
+			if (num != null && RuleAutomaton.isPattern (num))
+				// rules are not matched by the repository
+				values.putNull (NumberCode.KEY);
+			else
+				values.put (NumberCode.KEY, PhoneNumber.toKey (num == null ? "" : num));
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Write match index file with all active assignments (used for
+	 * lookups before the process has built its in-memory index).</p>
+	 * @param db SQLiteDatabase - database instance
+	 */
+	private void writeMatchIndex (SQLiteDatabase db) {
+		DialingPlan plan = DialingPlan.getHome (getContext());
+		List<NumberIndex.Entry> list = new ArrayList<NumberIndex.Entry>();
+		Cursor c = db.query (TABLE_NAME, NumberIndex.COLUMNS,
+			NumberCode.ACTIVE + "=1", null, null, null, null);
+		try {
+			while (c.moveToNext())
+				list.add (NumberIndex.toEntry (c, plan));
+		}
+		finally {
+			c.close();
+		}
+		MatchIndexFile.write (MatchIndexFile.getFile (getContext()), list);
+	}
+
 	//=================================================================
 	/**
 	 * <p>Insert new entry into repository.</p>
@@ -279,12 +473,17 @@ public class Repository extends ContentProvider {
 			values.put (NumberCode.ACTIVE, 0);
 		if (values.containsKey (NumberCode.NAME) == false)
 			values.put (NumberCode.NAME, "");
+		if (values.containsKey (NumberCode.OUTPUT) == false)
+			values.put (NumberCode.OUTPUT, NumberCode.OUTPUT_AUDIO);
+		setKey (values);
 
 		// perform insert operation
 		SQLiteDatabase db = dbHelper.getWritableDatabase();
 		long rowId = db.insert (TABLE_NAME, NumberCode.CODE, values);
 		if (rowId > 0) {
 			Uri uriEntry = ContentUris.withAppendedId (NumberCode.CONTENT_URI, rowId);
+			WaveCache.clear();
+			writeMatchIndex (db);
 			getContext().getContentResolver().notifyChange (uriEntry, null);
 			return uriEntry;
 		}
@@ -322,6 +521,8 @@ public class Repository extends ContentProvider {
 		}
 
 		// notify changed repository content.
+		WaveCache.clear();
+		writeMatchIndex (db);
 		getContext().getContentResolver().notifyChange (uri, null);
 		return count;
 	}
@@ -338,6 +539,10 @@ public class Repository extends ContentProvider {
 	public int update (Uri uri, ContentValues values, String where, String[] whereArgs) {
 
 		// perform update operation
+		if (values != null) {
+			values = new ContentValues (values);
+			setKey (values);
+		}
 		SQLiteDatabase db = dbHelper.getWritableDatabase();
 		int count;
 		switch (uriMatcher.match (uri)) {
@@ -356,6 +561,8 @@ public class Repository extends ContentProvider {
 		}
 
 		// notify changed repository content.
+		WaveCache.clear();
+		writeMatchIndex (db);
 		getContext().getContentResolver().notifyChange (uri, null);
 		return count;
 	}
@@ -372,6 +579,8 @@ public class Repository extends ContentProvider {
 				return NumberCode.CONTENT_TYPE;
 
 			case NUMBERCODE_ID:
+			case NUMBERCODE_LOOKUP:
+			case NUMBERCODE_CONTACT:
 				return NumberCode.CONTENT_ITEM_TYPE;
 
 			default:
@@ -388,6 +597,8 @@ public class Repository extends ContentProvider {
 		uriMatcher = new UriMatcher (UriMatcher.NO_MATCH);
 		uriMatcher.addURI (NumberCode.AUTHORITY, "ringcode", NUMBERCODE);
 		uriMatcher.addURI (NumberCode.AUTHORITY, "ringcode/#", NUMBERCODE_ID);
+		uriMatcher.addURI (NumberCode.AUTHORITY, "ringcode/lookup/*", NUMBERCODE_LOOKUP);
+		uriMatcher.addURI (NumberCode.AUTHORITY, "ringcode/contact/*", NUMBERCODE_CONTACT);
 
 		numbercodePrjMap = new HashMap<String, String>();
 		numbercodePrjMap.put (NumberCode._ID,		NumberCode._ID);
@@ -395,5 +606,8 @@ public class Repository extends ContentProvider {
 		numbercodePrjMap.put (NumberCode.CODE,		NumberCode.CODE);
 		numbercodePrjMap.put (NumberCode.ACTIVE,	NumberCode.ACTIVE);
 		numbercodePrjMap.put (NumberCode.NAME,		NumberCode.NAME);
+		numbercodePrjMap.put (NumberCode.OUTPUT,	NumberCode.OUTPUT);
+		numbercodePrjMap.put (NumberCode.KEY,		NumberCode.KEY);
+		numbercodePrjMap.put (NumberCode.CONTACT,	NumberCode.CONTACT);
 	}
 }
@@ -0,0 +1,63 @@
+//*********************************************************************
+//*   PGMID.        RINGCODE APPLICATION.                             *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.app.Application;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Application instance: handles process-wide events.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class RingCodeApp extends Application {
+
+	//=================================================================
+	/**
+	 * <p>Application process is started.</p>
+	 */
+	@Override
+	public void onCreate () {
+		super.onCreate();
+		// follow changes of the settings
+		Settings.init (this);
+		// keep snapshot of assignments for the ring path
+		NumberIndex.watch (this);
+		// hold audio output ready if the ringer is already silent
+		RingerMonitor.update (this);
+	}
+
+	//=================================================================
+	/**
+	 * <p>System requests to release memory.</p>
+	 * @param level int - trim level
+	 */
+	@Override
+	public void onTrimMemory (int level) {
+		super.onTrimMemory (level);
+		WaveCache.trim (level);
+	}
+
+	//=================================================================
+	/**
+	 * <p>System is running low on memory (pre-ICS devices).</p>
+	 */
+	@Override
+	public void onLowMemory () {
+		super.onLowMemory();
+		WaveCache.clear();
+	}
+}
@@ -14,29 +14,55 @@ package org.hoi_polloi.android.ringcode;
 ///////////////////////////////////////////////////////////////////////
 //Import external declarations
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.media.AudioManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 
 
 ///////////////////////////////////////////////////////////////////////
 /**
  * <p>Detect incoming phone calls and trigger notification if
  * phone number assigned to a Morse code in the repository..</p>
+ * <p>The broadcast is only parsed on the main thread; the decision
+ * (settings, lookup) and the start of the notification run on a
+ * worker thread. The broadcast is kept pending (API 11+) until the
+ * work is done, but never longer than the time budget; an overrun is
+ * logged with the time spent in each step.</p>
+ * <p>The state of a call is kept in a {@link CallSession}.</p>
  *
  * @author Bernd R. Fix   >Y<
  * @version 1.0
  */
 public class RingDetector extends BroadcastReceiver {
 
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final long BUDGET = 1000;	// max. time to start notification (ms)
+
 	//=================================================================
 	/**
-	 * <p>Morse code notification thread.</p>
+	 * <p>Buffer for canonical caller number (used by worker only).</p>
 	 */
-	private static MorseNotifier notifier = null;
+	private static final char[] digits = new char [64];
+
+	//=================================================================
+	/*
+	 * Worker thread and event sequence:
+	 */
+	private static Handler worker = null;		// ring handling thread
+	private static Handler timer = null;		// main thread (timeouts)
+	private static volatile int sequence = 0;	// number of last phone state event
 
 	//=================================================================
 	/**
@@ -47,6 +73,8 @@ public class RingDetector extends BroadcastReceiver {
 	@Override
 	public void onReceive (Context context, Intent intent) {
 
+		long received = SystemClock.uptimeMillis();
+
 		// get data associated with incoming call
 		Bundle bundle = intent.getExtras ();
 		if (bundle == null) {
@@ -56,72 +84,179 @@ public class RingDetector extends BroadcastReceiver {
 		String state  = bundle.getString ("state");
 		String number = bundle.getString ("incoming_number");
 
-		// decide on state:
-		if ("RINGING".equals (state)) {
-			// INCOMING CALL
+		// hand over to worker (events are handled in order)
+		getWorker();
+		Object pending = (Build.VERSION.SDK_INT >= 11 ? Async.goAsync (this) : null);
+		final Event ev = new Event (context.getApplicationContext(), state, number, received, ++sequence, pending);
+		worker.post (ev);
+		if (pending != null)
+			// timeout fallback: release broadcast when the budget is spent
+			timer.postDelayed (new Runnable() {
+				public void run () {
+					if (ev.release())
+						Debug.log ("Ring handling exceeds budget of " + BUDGET + "ms");
+				}
+			}, BUDGET);
+	}
 
-			// only use ringcode if ringer is silent
-			AudioManager am = (AudioManager) context.getSystemService (Context.AUDIO_SERVICE);
-			if (am == null) {
-				Debug.log ("No AudioManager available");
-				return;
-			}
-			int rm = am.getRingerMode();
-			if (rm == AudioManager.RINGER_MODE_NORMAL)
-				return;
-			
-			// only if we are activated
-			if (!Setup.isActivated())
-				return;
+	//=================================================================
+	/**
+	 * <p>Get the ring handling thread (started on first use); it is
+	 * shared with other event sources.</p>
+	 * @return Handler - ring handling thread
+	 */
+	static synchronized Handler getWorker () {
+		if (worker == null) {
+			HandlerThread thread = new HandlerThread ("RingCode-Ring", Process.THREAD_PRIORITY_URGENT_AUDIO);
+			thread.start();
+			worker = new Handler (thread.getLooper());
+			timer = new Handler (Looper.getMainLooper());
+		}
+		return worker;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if notifications are to be played: the ringer is silent
+	 * (or vibrates only) and RingCode is active.</p>
+	 * @param context Context - associated context
+	 * @return boolean - play notifications?
+	 */
+	static boolean isEnabled (Context context) {
+		AudioManager am = (AudioManager) context.getSystemService (Context.AUDIO_SERVICE);
+		if (am == null) {
+			Debug.log ("No AudioManager available");
+			return false;
+		}
+		if (am.getRingerMode() == AudioManager.RINGER_MODE_NORMAL)
+			return false;
+		return Setup.isActivated();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Phone state event handled by the worker.</p>
+	 */
+	private static final class Event implements Runnable {
+
+		private final Context context;		// application context
+		private final String state;			// phone state
+		private final String number;		// caller number (or null)
+		private final long received;		// time of broadcast (uptime)
+		private final int seq;				// event sequence number
+		private final Object pending;		// pending broadcast (or null)
+		private final AtomicBoolean done = new AtomicBoolean (false);
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Constructor: Instantiate new event.</p>
+		 * @param context Context - application context
+		 * @param state String - phone state
+		 * @param number String - caller number (or null)
+		 * @param received long - time of broadcast (uptime)
+		 * @param seq int - event sequence number
+		 * @param pending Object - pending broadcast (or null)
+		 */
+		Event (Context context, String state, String number, long received, int seq, Object pending) {
+			this.context = context;
+			this.state = state;
+			this.number = number;
+			this.received = received;
+			this.seq = seq;
+			this.pending = pending;
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Release pending broadcast (once).</p>
+		 * @return boolean - broadcast released by this call?
+		 */
+		boolean release () {
+			if (!done.compareAndSet (false, true))
+				return false;
+			if (pending != null)
+				Async.finish (pending);
+			return true;
+		}
 
-			// find number in assignments
-			number = PhoneNumber.normalize (number);
-			Cursor c = context.getContentResolver().query (
-				Repository.NumberCode.CONTENT_URI,
-				new String[] { Repository.NumberCode.NUMBER, Repository.NumberCode.CODE },
-				null, null, null
-			);
-			
-			// get code from associated assignment
-			String code = null;
+		//-------------------------------------------------------------
+		/**
+		 * <p>Handle phone state event.</p>
+		 */
+		public void run () {
 			try {
-				c.moveToFirst();
-				do {
-					// check for matching phone numbers.
-					String list_number = PhoneNumber.normalize (c.getString (0));
-					String list_code = c.getString (1);
-					if (PhoneNumber.isSame (number, list_number)) {
-						code = list_code;
-						break;
-					}
-				} while (c.moveToNext());
+				if ("RINGING".equals (state))
+					ring();
+				else if ("OFFHOOK".equals (state))
+					CallSession.offhook (context, worker);
+				else
+					// any other state terminates the call session
+					CallSession.idle();
 			}
 			catch (Exception e) {
-				Debug.log ("Failed: lookup number in assignment");
+				Debug.log ("Failed: handle phone state: " + e);
 			}
 			finally {
-				// close query on exit
-				c.close();
+				release();
 			}
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Incoming call: find assignment and start notification.</p>
+		 */
+		private void ring () {
+			long t0 = SystemClock.uptimeMillis();
 
-			// quit if no assignment is found
-			if (code == null)
+			// only use ringcode if ringer is silent and we are activated
+			if (!isEnabled (context))
 				return;
+			long t1 = SystemClock.uptimeMillis();
 
-			// run notification loop.
-			if (notifier == null) {
-				int volume = Setup.getVolume();
-				int speed = Setup.getSpeed();
-				notifier = new MorseNotifier (speed, volume);
-			}
-			notifier.begin (code);
+			// find best matching assignment for number (once per call)
+			CallSession session = CallSession.ringing (context, worker, number);
+			if (session == null)
+				return;
+			NumberIndex.Entry match = session.decide (digits);
+			long t2 = SystemClock.uptimeMillis();
+
+			// quit if no assignment is found or the call has changed state
+			if (match == null || seq != sequence)
+				return;
+
+			// run notification loop (unless running already)
+			if (!session.play (received))
+				return;
+			long t3 = SystemClock.uptimeMillis();
+
+			Debug.log ("Ring: queued " + (t0 - received) + "ms, settings " + (t1 - t0)
+				+ "ms, lookup " + (t2 - t1) + "ms, start " + (t3 - t2) + "ms"
+				+ (t3 - received > BUDGET ? " (over budget)" : ""));
 		}
-		else {
-			// Not INCOMING state terminates any running notification
-			if (notifier != null) {
-				notifier.terminate();
-				notifier = null;
-			}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Asynchronous broadcast handling (API 11+): kept in a separate
+	 * class, so older platforms never load it.</p>
+	 */
+	private static final class Async {
+
+		/**
+		 * <p>Keep broadcast pending after onReceive returns.</p>
+		 * @param r BroadcastReceiver - receiver
+		 * @return Object - pending result
+		 */
+		static Object goAsync (BroadcastReceiver r) {
+			return r.goAsync();
+		}
+
+		/**
+		 * <p>Finish pending broadcast.</p>
+		 * @param pending Object - pending result
+		 */
+		static void finish (Object pending) {
+			((BroadcastReceiver.PendingResult) pending).finish();
 		}
 	}
 }
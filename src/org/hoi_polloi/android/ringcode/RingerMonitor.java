@@ -0,0 +1,73 @@
+//*********************************************************************
+//*   PGMID.        TRACK RINGER MODE TO PREPARE AUDIO OUTPUT.        *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioManager;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Watch ringer mode changes: while the ringer is silent (or
+ * vibrating) and RingCode is active, the playback scheduler holds a
+ * prepared player; it is released when the ringer returns to
+ * normal.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class RingerMonitor extends BroadcastReceiver {
+
+	//=================================================================
+	/**
+	 * <p>Broadcast message received.</p>
+	 * @param context Context - associated context
+	 * @param intent Intent - message parameters (action,category,data)
+	 */
+	@Override
+	public void onReceive (Context context, Intent intent) {
+		if (!AudioManager.RINGER_MODE_CHANGED_ACTION.equals (intent.getAction()))
+			return;
+		int mode = intent.getIntExtra (AudioManager.EXTRA_RINGER_MODE, AudioManager.RINGER_MODE_NORMAL);
+		update (mode);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Update scheduler for current ringer mode.</p>
+	 * @param context Context - associated context
+	 */
+	public static void update (Context context) {
+		AudioManager am = (AudioManager) context.getSystemService (Context.AUDIO_SERVICE);
+		if (am == null) {
+			Debug.log ("No AudioManager available");
+			return;
+		}
+		update (am.getRingerMode());
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Update scheduler for given ringer mode.</p>
+	 * @param mode int - ringer mode (AudioManager.RINGER_MODE_???)
+	 */
+	private static void update (int mode) {
+		if (mode != AudioManager.RINGER_MODE_NORMAL && Setup.isActivated())
+			PlaybackScheduler.getInstance().warmUp();
+		else
+			PlaybackScheduler.getInstance().coolDown();
+	}
+}
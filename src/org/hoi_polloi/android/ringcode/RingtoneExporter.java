@@ -0,0 +1,245 @@
+//*********************************************************************
+//*   PGMID.        EXPORT ASSIGNMENTS AS RINGTONE FILES.             *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Environment;
+import android.provider.MediaStore;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Render the codes of assignments into WAV files and register them
+ * as ringtones in the media store, so they can be used as ringtone of
+ * the contact.</p>
+ * <p>Files are rendered with the current speed, spacing, alphabet and
+ * volume. The name of a file contains a hash of these parameters and
+ * the code; a file with matching name is current and is not rendered
+ * again.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class RingtoneExporter {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final String DIRECTORY	= "Ringtones";		// below external storage
+	private static final String PREFIX		= "ringcode_";		// file name prefix
+	private static final String MIME_TYPE	= "audio/x-wav";
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private ContentResolver resolver = null;
+	private MorseCompiler compiler = null;
+	private int volume = 0;
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate exporter with current settings.</p>
+	 * @param resolver ContentResolver - access to repository and media store
+	 */
+	public RingtoneExporter (ContentResolver resolver) {
+		this.resolver = resolver;
+		compiler = new MorseCompiler (
+			MorseTiming.forDotLength (Setup.getSpeed(), Setup.getSpacing()),
+			Morse.getAlphabet (Setup.getAlphabet())
+		);
+		volume = Setup.getVolume();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get directory for ringtone files.</p>
+	 * @return File - output directory
+	 */
+	public static File getDirectory () {
+		return new File (Environment.getExternalStorageDirectory(), DIRECTORY);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Render code of an assignment into a ringtone file (if not
+	 * current) and register it in the media store.</p>
+	 * @param id long - assignment identifier
+	 * @param title String - title of ringtone
+	 * @param code String - Morse code of assignment
+	 * @return boolean - file rendered (false if current or failed)
+	 */
+	public boolean render (long id, String title, String code) {
+
+		// check for current file
+		MorseProgram prog = compiler.compile (code);
+		if (prog.isEmpty())
+			return false;
+		String hash = Integer.toHexString ((prog.getKey() + ':' + volume).hashCode());
+		String name = PREFIX + id + '_' + hash + ".wav";
+		File dir = getDirectory();
+		File out = new File (dir, name);
+		if (out.exists())
+			return false;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			Debug.log ("Failed: create ringtone directory " + dir);
+			return false;
+		}
+
+		// render into temporary file and move it in place
+		File tmp = new File (dir, name + ".tmp");
+		try {
+			short[] pcm = new PcmSynthesizer (volume).render (prog);
+			WaveWriter w = new WaveWriter (tmp, PcmSynthesizer.SAMPLE_RATE);
+			try {
+				w.write (pcm, 0, pcm.length);
+			}
+			finally {
+				w.close();
+			}
+		}
+		catch (IOException e) {
+			Debug.log ("Failed: write ringtone " + tmp);
+			tmp.delete();
+			return false;
+		}
+		if (!tmp.renameTo (out)) {
+			Debug.log ("Failed: rename ringtone " + tmp);
+			tmp.delete();
+			return false;
+		}
+
+		// drop outdated files of the assignment
+		String prefix = PREFIX + id + '_';
+		File[] old = dir.listFiles();
+		if (old != null) {
+			for (File f : old) {
+				String n = f.getName();
+				if (n.startsWith (prefix) && !n.equals (name)) {
+					unregister (f);
+					f.delete();
+				}
+			}
+		}
+		register (out, title);
+		return true;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Render all assignments in parallel (one worker per core).</p>
+	 * @return int - number of rendered files
+	 */
+	public int renderAll () {
+
+		// collect assignments
+		List<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+		Cursor c = resolver.query (Repository.NumberCode.CONTENT_URI, Repository.PROJECTION, null, null, null);
+		if (c == null)
+			return 0;
+		try {
+			while (c.moveToNext()) {
+				final long id = c.getLong (0);
+				final String code = c.getString (Repository.COLUMN_CODE);
+				String name = c.getString (Repository.COLUMN_NAME);
+				if (name == null || name.length() == 0)
+					name = c.getString (Repository.COLUMN_NUMBER);
+				final String title = "RingCode: " + name;
+				jobs.add (new Callable<Boolean>() {
+					public Boolean call () {
+						return render (id, title, code);
+					}
+				});
+			}
+		}
+		finally {
+			c.close();
+		}
+
+		// render files
+		int count = 0;
+		int cores = Math.max (1, Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool (Math.min (cores, Math.max (1, jobs.size())));
+		try {
+			for (Future<Boolean> f : pool.invokeAll (jobs)) {
+				try {
+					if (f.get())
+						count++;
+				}
+				catch (Exception e) {
+					Debug.log ("Failed: render ringtone: " + e);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Debug.log ("Failed: render ringtones interrupted");
+		}
+		finally {
+			pool.shutdown();
+		}
+		return count;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Register file as ringtone in the media store.</p>
+	 * @param f File - ringtone file
+	 * @param title String - title of ringtone
+	 */
+	private void register (File f, String title) {
+		unregister (f);
+		ContentValues values = new ContentValues();
+		values.put (MediaStore.MediaColumns.DATA, f.getAbsolutePath());
+		values.put (MediaStore.MediaColumns.TITLE, title);
+		values.put (MediaStore.MediaColumns.MIME_TYPE, MIME_TYPE);
+		values.put (MediaStore.Audio.AudioColumns.IS_RINGTONE, true);
+		values.put (MediaStore.Audio.AudioColumns.IS_NOTIFICATION, false);
+		values.put (MediaStore.Audio.AudioColumns.IS_ALARM, false);
+		values.put (MediaStore.Audio.AudioColumns.IS_MUSIC, false);
+		try {
+			resolver.insert (MediaStore.Audio.Media.getContentUriForPath (f.getAbsolutePath()), values);
+		}
+		catch (Exception e) {
+			Debug.log ("Failed: register ringtone " + f);
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove media store entry of a file.</p>
+	 * @param f File - ringtone file
+	 */
+	private void unregister (File f) {
+		String path = f.getAbsolutePath();
+		Uri uri = MediaStore.Audio.Media.getContentUriForPath (path);
+		try {
+			resolver.delete (uri, MediaStore.MediaColumns.DATA + "=?", new String[] { path });
+		}
+		catch (Exception e) {
+			Debug.log ("Failed: unregister ringtone " + f);
+		}
+	}
+}
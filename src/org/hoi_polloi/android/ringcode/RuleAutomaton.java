@@ -0,0 +1,432 @@
+//*********************************************************************
+//*   PGMID.        AUTOMATON FOR PHONE NUMBER RULES.                 *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Deterministic automaton over the digits of a phone number that
+ * matches a set of number rules at once.</p>
+ * <p>A rule is an assignment whose number is a pattern: digits match
+ * themselves, "?" matches any digit, "[0-4]" matches one digit of a
+ * range and "*" matches any number of digits (e.g. "+4930123*" for a
+ * switchboard or "+44*" for a country). Rules are compiled into one
+ * automaton, so a lookup reads every digit of the caller once no
+ * matter how many rules exist.</p>
+ * <p>If several rules match, the most specific one wins: the rule
+ * with most single-digit positions, then the one with most literal
+ * digits, then the one with the lowest identifier.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class RuleAutomaton {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int STAR		= 0;		// element: any digits
+	private static final int ANY		= 0x3ff;	// element: any single digit
+	private static final int MAX_STATES	= 4096;		// limit for automaton size
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final NumberIndex.Entry[] rules;	// compiled rules
+	private final int[] next;					// transitions (10 per state, -1=none)
+	private final int[] accept;					// rule accepted in state (or -1)
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate compiled automaton.</p>
+	 * @param rules NumberIndex.Entry[] - compiled rules
+	 * @param next int[] - transitions
+	 * @param accept int[] - accepted rules
+	 */
+	private RuleAutomaton (NumberIndex.Entry[] rules, int[] next, int[] accept) {
+		this.rules = rules;
+		this.next = next;
+		this.accept = accept;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Check if a number is a rule pattern.</p>
+	 * @param number CharSequence - phone number or pattern
+	 * @return boolean - number contains pattern elements?
+	 */
+	public static boolean isPattern (CharSequence number) {
+		for (int n = 0; n < number.length(); n++) {
+			char ch = number.charAt (n);
+			if (ch == '*' || ch == '?' || ch == '[')
+				return true;
+		}
+		return false;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get canonical form of a pattern: the leading digits are
+	 * converted like a phone number (see
+	 * {@link PhoneNumber#canonical(CharSequence, DialingPlan, char[])}),
+	 * ranges are written as lists of digits.</p>
+	 * @param pattern String - rule pattern
+	 * @param plan DialingPlan - home dialing plan (or null)
+	 * @return String - canonical pattern (empty if invalid)
+	 */
+	public static String canonical (String pattern, DialingPlan plan) {
+		int[] elem = parse (pattern);
+		if (elem == null)
+			return "";
+
+		// leading literal digits and size of pattern
+		StringBuilder lead = new StringBuilder();
+		int pos = 0;
+		while (pos < elem.length && Integer.bitCount (elem[pos]) == 1)
+			lead.append ((char) ('0' + Integer.numberOfTrailingZeros (elem[pos++])));
+		int fixed = 0;
+		for (int e : elem)
+			if (e != STAR)
+				fixed++;
+		boolean open = (fixed < elem.length);
+
+		// convert leading digits
+		String prefix = null;
+		if (pattern.trim().startsWith ("+"))
+			prefix = lead.toString();
+		else if (plan != null)
+			prefix = plan.toE164Prefix (lead, fixed, open);
+		if (prefix == null)
+			prefix = PhoneNumber.normalize (lead.toString());
+
+		// assemble canonical pattern
+		StringBuilder buf = new StringBuilder (prefix);
+		for (int n = pos; n < elem.length; n++) {
+			int e = elem[n];
+			if (e == STAR)
+				buf.append ('*');
+			else if (e == ANY)
+				buf.append ('?');
+			else if (Integer.bitCount (e) == 1)
+				buf.append ((char) ('0' + Integer.numberOfTrailingZeros (e)));
+			else {
+				buf.append ('[');
+				for (int d = 0; d < 10; d++)
+					if ((e & (1 << d)) != 0)
+						buf.append ((char) ('0' + d));
+				buf.append (']');
+			}
+		}
+		return buf.toString();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Parse pattern into elements: a bit mask of matching digits for
+	 * single positions or STAR. Separators are ignored, consecutive
+	 * stars are merged.</p>
+	 * @param pattern CharSequence - rule pattern
+	 * @return int[] - pattern elements (or null if invalid)
+	 */
+	private static int[] parse (CharSequence pattern) {
+		int count = pattern.length();
+		int[] elem = new int [count];
+		int len = 0;
+		for (int n = 0; n < count; n++) {
+			char ch = pattern.charAt (n);
+			if (ch >= '0' && ch <= '9')
+				elem[len++] = 1 << (ch - '0');
+			else if (ch == '?')
+				elem[len++] = ANY;
+			else if (ch == '*') {
+				if (len == 0 || elem[len-1] != STAR)
+					elem[len++] = STAR;
+			}
+			else if (ch == '[') {
+				// digit range or list
+				int mask = 0;
+				int last = -1;
+				for (n++; n < count && pattern.charAt (n) != ']'; n++) {
+					ch = pattern.charAt (n);
+					if (ch >= '0' && ch <= '9') {
+						mask |= 1 << (ch - '0');
+						last = ch - '0';
+					}
+					else if (ch == '-' && last >= 0 && n + 1 < count) {
+						int to = pattern.charAt (++n) - '0';
+						if (to < last || to > 9)
+							return null;
+						for (int d = last; d <= to; d++)
+							mask |= 1 << d;
+						last = -1;
+					}
+					else
+						return null;
+				}
+				if (n == count || mask == 0)
+					return null;
+				elem[len++] = mask;
+			}
+			else if (ch == '+' && len == 0)
+				continue;
+			else if (" -/().".indexOf (ch) < 0)
+				return null;
+		}
+		return (len == 0 ? null : copy (elem, len));
+	}
+
+	//=================================================================
+	/**
+	 * <p>Compile rules into an automaton: the patterns form a
+	 * non-deterministic automaton (one state per position in a
+	 * pattern) that is turned into a deterministic one by subset
+	 * construction.</p>
+	 * @param list List&lt;NumberIndex.Entry&gt; - rules (canonical patterns)
+	 * @return RuleAutomaton - compiled automaton (or null if there are
+	 * no valid rules or the automaton gets too large)
+	 */
+	public static RuleAutomaton compile (List<NumberIndex.Entry> list) {
+
+		// parse patterns, sort by precedence
+		List<NumberIndex.Entry> valid = new ArrayList<NumberIndex.Entry>();
+		final HashMap<NumberIndex.Entry,int[]> parsed = new HashMap<NumberIndex.Entry,int[]>();
+		for (NumberIndex.Entry e : list) {
+			int[] elem = parse (e.number);
+			if (elem == null)
+				continue;
+			parsed.put (e, elem);
+			valid.add (e);
+		}
+		if (valid.isEmpty())
+			return null;
+		NumberIndex.Entry[] rules = valid.toArray (new NumberIndex.Entry [valid.size()]);
+		Arrays.sort (rules, new Comparator<NumberIndex.Entry>() {
+			public int compare (NumberIndex.Entry a, NumberIndex.Entry b) {
+				int[] ea = parsed.get (a), eb = parsed.get (b);
+				int c = specificity (eb) - specificity (ea);
+				if (c != 0)
+					return c;
+				return (a.id < b.id ? -1 : (a.id > b.id ? 1 : 0));
+			}
+		});
+
+		// non-deterministic states: position in pattern; final positions
+		// are accepting (rule index is the precedence)
+		int size = 0;
+		int[] base = new int [rules.length];
+		for (int r = 0; r < rules.length; r++) {
+			base[r] = size;
+			size += parsed.get (rules[r]).length + 1;
+		}
+		int[] elem = new int [size];
+		int[] rule = new int [size];
+		for (int r = 0; r < rules.length; r++) {
+			int[] e = parsed.get (rules[r]);
+			for (int n = 0; n <= e.length; n++) {
+				elem[base[r] + n] = (n < e.length ? e[n] : -1);
+				rule[base[r] + n] = r;
+			}
+		}
+
+		// subset construction
+		HashMap<String,Integer> known = new HashMap<String,Integer>();
+		List<int[]> states = new ArrayList<int[]>();
+		int[] trans = new int [10 * 64];
+		boolean[] mark = new boolean [size];
+		int[] set = new int [size];
+		int num = 0;
+		for (int r = 0; r < rules.length; r++)
+			num = closure (base[r], elem, mark, set, num);
+		states.add (finish (set, num, mark));
+		known.put (Arrays.toString (states.get (0)), 0);
+		for (int s = 0; s < states.size(); s++) {
+			int[] cur = states.get (s);
+			if (trans.length < 10 * states.size())
+				trans = copy (trans, 2 * trans.length);
+			for (int d = 0; d < 10; d++) {
+				num = 0;
+				for (int q : cur) {
+					if (elem[q] == STAR)
+						num = closure (q, elem, mark, set, num);
+					else if (elem[q] > 0 && (elem[q] & (1 << d)) != 0)
+						num = closure (q + 1, elem, mark, set, num);
+				}
+				if (num == 0) {
+					trans[10*s + d] = -1;
+					continue;
+				}
+				int[] succ = finish (set, num, mark);
+				String key = Arrays.toString (succ);
+				Integer t = known.get (key);
+				if (t == null) {
+					if (states.size() == MAX_STATES) {
+						Debug.log ("Failed: number rules too complex");
+						return null;
+					}
+					t = states.size();
+					known.put (key, t);
+					states.add (succ);
+				}
+				trans[10*s + d] = t;
+			}
+		}
+
+		// accepted rule per state (states are sorted, so the first final
+		// position belongs to the rule with highest precedence)
+		int[] accept = new int [states.size()];
+		for (int s = 0; s < accept.length; s++) {
+			accept[s] = -1;
+			for (int q : states.get (s))
+				if (elem[q] < 0) {
+					accept[s] = rule[q];
+					break;
+				}
+		}
+		return new RuleAutomaton (rules, copy (trans, 10 * states.size()), accept);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Add state and all states reachable by skipping stars to a set.</p>
+	 * @param q int - state
+	 * @param elem int[] - element of state (-1 for final positions)
+	 * @param mark boolean[] - states in set
+	 * @param set int[] - states in set (unordered)
+	 * @param num int - size of set
+	 * @return int - new size of set
+	 */
+	private static int closure (int q, int[] elem, boolean[] mark, int[] set, int num) {
+		while (!mark[q]) {
+			mark[q] = true;
+			set[num++] = q;
+			if (elem[q] != STAR)
+				break;
+			q++;
+		}
+		return num;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get sorted copy of a set and reset the marks.</p>
+	 * @param set int[] - states in set
+	 * @param num int - size of set
+	 * @param mark boolean[] - states in set
+	 * @return int[] - sorted states
+	 */
+	private static int[] finish (int[] set, int num, boolean[] mark) {
+		int[] res = copy (set, num);
+		Arrays.sort (res);
+		for (int q : res)
+			mark[q] = false;
+		return res;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Copy array into an array of different size.</p>
+	 * @param a int[] - array
+	 * @param len int - new size
+	 * @return int[] - copy of array (cut or zero-padded)
+	 */
+	private static int[] copy (int[] a, int len) {
+		int[] res = new int [len];
+		System.arraycopy (a, 0, res, 0, Math.min (a.length, len));
+		return res;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get specificity of a pattern: single-digit positions count
+	 * more than literal digits.</p>
+	 * @param elem int[] - pattern elements
+	 * @return int - specificity
+	 */
+	private static int specificity (int[] elem) {
+		int res = 0;
+		for (int e : elem) {
+			if (e != STAR)
+				res += 32;
+			if (Integer.bitCount (e) == 1)
+				res++;
+		}
+		return res;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Find the rule matching a phone number.</p>
+	 * @param digits char[] - canonical phone number
+	 * @param len int - length of number
+	 * @return NumberIndex.Entry - matching rule (or null)
+	 */
+	public NumberIndex.Entry match (char[] digits, int len) {
+		int state = 0;
+		for (int n = 0; n < len; n++) {
+			int d = digits[n] - '0';
+			if (d < 0 || d > 9)
+				return null;
+			state = next[10*state + d];
+			if (state < 0)
+				return null;
+		}
+		int r = accept[state];
+		return (r < 0 ? null : rules[r]);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of compiled rules.</p>
+	 * @return int - number of rules
+	 */
+	public int size () {
+		return rules.length;
+	}
+
+	//=================================================================
+	//	Access to compiled tables (for storage in the match index file)
+	//=================================================================
+	/**
+	 * <p>Get rules in order of precedence (indexes of accepted rules).</p>
+	 * @return NumberIndex.Entry[] - compiled rules
+	 */
+	NumberIndex.Entry[] getRules () {
+		return rules;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get transitions: the successor of state s for digit d is at
+	 * index 10*s+d (-1 if none); the start state is 0.</p>
+	 * @return int[] - transitions
+	 */
+	int[] getTransitions () {
+		return next;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get rule accepted in each state.</p>
+	 * @return int[] - index of rule per state (or -1)
+	 */
+	int[] getAccepting () {
+		return accept;
+	}
+}
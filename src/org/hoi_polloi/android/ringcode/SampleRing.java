@@ -0,0 +1,175 @@
+//*********************************************************************
+//*   PGMID.        LOCK-FREE RING BUFFER FOR PCM SAMPLES.            *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.util.concurrent.locks.LockSupport;
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Fixed-size ring buffer of 16-bit samples between exactly one
+ * producer thread and one consumer thread.</p>
+ * <p>No locks are used: the producer only advances the write counter,
+ * the consumer only advances the read counter. The volatile counters
+ * order the sample accesses, so samples are visible to the consumer
+ * before the write counter that covers them. Both sides return at once
+ * if there is no room (or no data).</p>
+ * <p>A side that has to wait parks its thread ({@link #awaitRoom()},
+ * {@link #awaitData()}); the other side unparks it when it has moved
+ * its counter. A waiting thread is registered before it checks the
+ * counters again, and a side checks for a waiter after it has moved
+ * its counter, so a wake-up can't be missed.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public final class SampleRing {
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final short[] buf;				// sample storage
+	private final int mask;					// size - 1 (size is a power of 2)
+	private volatile long written = 0;		// samples written (producer)
+	private volatile long read = 0;			// samples read (consumer)
+	private volatile boolean closed = false;	// no more samples follow?
+	private volatile boolean aborted = false;	// waiting is cancelled?
+	private volatile Thread producer = null;	// producer waiting for room
+	private volatile Thread consumer = null;	// consumer waiting for data
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new (empty) ring buffer.</p>
+	 * @param size int - capacity in samples (rounded up to a power of 2)
+	 */
+	public SampleRing (int size) {
+		int cap = 1;
+		while (cap < size)
+			cap <<= 1;
+		buf = new short [cap];
+		mask = cap - 1;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Reset buffer for a new stream (no producer or consumer may
+	 * be active).</p>
+	 */
+	public void clear () {
+		written = 0;
+		read = 0;
+		closed = false;
+		aborted = false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Cancel the stream: waiting threads return at once (and do not
+	 * wait again until the buffer is cleared).</p>
+	 */
+	public void abort () {
+		aborted = true;
+		wake (producer);
+		wake (consumer);
+	}
+
+	//=================================================================
+	//	Producer side
+	//=================================================================
+	/**
+	 * <p>Append samples (as many as fit into the buffer).</p>
+	 * @param src short[] - samples
+	 * @param off int - offset of first sample
+	 * @param len int - number of samples
+	 * @return int - number of samples appended
+	 */
+	public int write (short[] src, int off, int len) {
+		long w = written;
+		int n = (int) Math.min (len, buf.length - (w - read));
+		if (n <= 0)
+			return 0;
+		int pos = (int) (w & mask);
+		int first = Math.min (n, buf.length - pos);
+		System.arraycopy (src, off, buf, pos, first);
+		System.arraycopy (src, off + first, buf, 0, n - first);
+		written = w + n;
+		wake (consumer);
+		return n;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Wait until there is room for samples (or the stream is
+	 * aborted).</p>
+	 */
+	public void awaitRoom () {
+		producer = Thread.currentThread();
+		while (written - read >= buf.length && !aborted)
+			LockSupport.park (this);
+		producer = null;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Mark end of stream.</p>
+	 */
+	public void close () {
+		closed = true;
+		wake (consumer);
+	}
+
+	//=================================================================
+	//	Consumer side
+	//=================================================================
+	/**
+	 * <p>Take samples (as many as available).</p>
+	 * @param dst short[] - buffer for samples
+	 * @param off int - offset of first sample
+	 * @param len int - max. number of samples
+	 * @return int - number of samples taken (-1 at the end of a
+	 * closed stream)
+	 */
+	public int read (short[] dst, int off, int len) {
+		boolean end = closed;
+		long r = read;
+		int n = (int) Math.min (len, written - r);
+		if (n <= 0)
+			return (end ? -1 : 0);
+		int pos = (int) (r & mask);
+		int first = Math.min (n, buf.length - pos);
+		System.arraycopy (buf, pos, dst, off, first);
+		System.arraycopy (buf, 0, dst, off + first, n - first);
+		read = r + n;
+		wake (producer);
+		return n;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Wait until samples are available (or the stream is closed or
+	 * aborted).</p>
+	 */
+	public void awaitData () {
+		consumer = Thread.currentThread();
+		while (written == read && !closed && !aborted)
+			LockSupport.park (this);
+		consumer = null;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Unpark a waiting thread.</p>
+	 * @param t Thread - waiting thread (or null)
+	 */
+	private static void wake (Thread t) {
+		if (t != null)
+			LockSupport.unpark (t);
+	}
+}
@@ -0,0 +1,336 @@
+//*********************************************************************
+//*   PGMID.        SNAPSHOT OF CONFIGURATION SETTINGS.               *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Immutable snapshot of the configuration settings.</p>
+ * <p>The current snapshot is published through a volatile reference,
+ * so the receiver, the playback threads and the UI read it without
+ * locking. It is loaded from the preferences on first access and
+ * replaced whenever the preferences change; new settings are
+ * published at once and written to storage in the background.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public final class Settings {
+
+	//=================================================================
+	/**
+	 * <p>Name of preference settings (persistent).</p>
+	 */
+	private static final String PREFS = "RingCode_Prefs";
+
+	/**
+	 * <p>Settings used if no preferences are available.</p>
+	 */
+	private static final Settings DEFAULTS = new Settings (
+		false, 100, 100, 0, Morse.BACKEND_PCM, Morse.ALPHABET_ITU, 500, 100, 5, true, false,
+		CodeGenerator.MODE_OFF, 4, 0
+	);
+
+	//=================================================================
+	/*
+	 * Current snapshot:
+	 */
+	private static volatile Settings current = null;
+	private static SharedPreferences prefs = null;
+	// preferences only keep weak references to listeners
+	private static SharedPreferences.OnSharedPreferenceChangeListener listener = null;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final boolean	active;		// use ringcodes?
+	private final int		volume;		// speaker volume (0..100)
+	private final int		speed;		// duration of short beep in ms
+	private final int		spacing;	// Farnsworth: effective speed (% of char speed)
+	private final int		backend;	// output backend
+	private final int		alphabet;	// character table
+	private final int		delay;		// delay before first code (ms)
+	private final int		gap;		// silence between codes (% of code duration)
+	private final int		backoff;	// repetitions before back-off (0=never)
+	private final boolean	suffix;		// match numbers by suffix as fallback?
+	private final boolean	messages;	// notify messages (SMS, apps)?
+	private final int		generate;	// codes for unassigned callers
+	private final int		digits;		// number of digits in generated codes
+	private final int		budget;		// max. duration of a code (ms, 0=no limit)
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new settings.</p>
+	 * @param active boolean - use ringcodes?
+	 * @param volume int - speaker volume (0..100)
+	 * @param speed int - duration of short beep in ms
+	 * @param spacing int - effective speed in percent of character speed (0=off)
+	 * @param backend int - backend type (Morse.BACKEND_???)
+	 * @param alphabet int - alphabet identifier (Morse.ALPHABET_???)
+	 * @param delay int - delay before first code (ms)
+	 * @param gap int - silence in percent of code duration
+	 * @param backoff int - repetitions before back-off (0=never)
+	 * @param suffix boolean - match numbers by suffix as fallback?
+	 * @param messages boolean - notify messages (SMS, apps)?
+	 * @param generate int - codes for unassigned callers (CodeGenerator.MODE_???)
+	 * @param digits int - number of digits in generated codes
+	 * @param budget int - max. duration of a code (ms, 0=no limit)
+	 */
+	public Settings (boolean active, int volume, int speed, int spacing, int backend,
+			int alphabet, int delay, int gap, int backoff, boolean suffix,
+			boolean messages, int generate, int digits, int budget) {
+		this.active = active;
+		this.volume = volume;
+		this.speed = speed;
+		this.spacing = spacing;
+		this.backend = backend;
+		this.alphabet = alphabet;
+		this.delay = delay;
+		this.gap = gap;
+		this.backoff = backoff;
+		this.suffix = suffix;
+		this.messages = messages;
+		this.generate = generate;
+		this.digits = Math.max (1, digits);
+		this.budget = Math.max (0, budget);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Attach settings to the application (called once per process):
+	 * the snapshot follows all changes of the preferences.</p>
+	 * @param context Context - application context
+	 */
+	public static synchronized void init (Context context) {
+		if (prefs != null)
+			return;
+		prefs = context.getApplicationContext().getSharedPreferences (PREFS, 0);
+		listener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+			public void onSharedPreferenceChanged (SharedPreferences sp, String key) {
+				current = read (sp);
+			}
+		};
+		prefs.registerOnSharedPreferenceChangeListener (listener);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get current settings (loaded on first access).</p>
+	 * @return Settings - current snapshot
+	 */
+	public static Settings get () {
+		Settings s = current;
+		if (s != null)
+			return s;
+		synchronized (Settings.class) {
+			if (current == null) {
+				if (prefs == null) {
+					Debug.log ("Settings accessed before initialization");
+					return DEFAULTS;
+				}
+				current = read (prefs);
+			}
+			return current;
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Publish new settings and persist them asynchronously.</p>
+	 * @param s Settings - new settings
+	 */
+	public static void save (Settings s) {
+		current = s;
+		if (prefs == null)
+			return;
+		final SharedPreferences.Editor editor = prefs.edit();
+		s.write (editor);
+		if (Build.VERSION.SDK_INT >= 9)
+			editor.apply();
+		else
+			new Thread ("RingCode-Prefs") {
+				public void run () {
+					if (!editor.commit())
+						Debug.log ("Failed: save settings");
+				}
+			}.start();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Read settings from preferences.</p>
+	 * @param sp SharedPreferences - preference settings
+	 * @return Settings - new snapshot
+	 */
+	private static Settings read (SharedPreferences sp) {
+		return new Settings (
+			sp.getBoolean ("active", DEFAULTS.active),
+			sp.getInt ("volume", DEFAULTS.volume),
+			sp.getInt ("speed", DEFAULTS.speed),
+			sp.getInt ("spacing", DEFAULTS.spacing),
+			sp.getInt ("backend", DEFAULTS.backend),
+			sp.getInt ("alphabet", DEFAULTS.alphabet),
+			sp.getInt ("delay", DEFAULTS.delay),
+			sp.getInt ("gap", DEFAULTS.gap),
+			sp.getInt ("backoff", DEFAULTS.backoff),
+			sp.getBoolean ("suffix", DEFAULTS.suffix),
+			sp.getBoolean ("messages", DEFAULTS.messages),
+			sp.getInt ("generate", DEFAULTS.generate),
+			sp.getInt ("digits", DEFAULTS.digits),
+			sp.getInt ("budget", DEFAULTS.budget)
+		);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write settings to preferences.</p>
+	 * @param editor SharedPreferences.Editor - preference editor
+	 */
+	private void write (SharedPreferences.Editor editor) {
+		editor.putBoolean ("active", active);
+		editor.putInt ("volume", volume);
+		editor.putInt ("speed", speed);
+		editor.putInt ("spacing", spacing);
+		editor.putInt ("backend", backend);
+		editor.putInt ("alphabet", alphabet);
+		editor.putInt ("delay", delay);
+		editor.putInt ("gap", gap);
+		editor.putInt ("backoff", backoff);
+		editor.putBoolean ("suffix", suffix);
+		editor.putBoolean ("messages", messages);
+		editor.putInt ("generate", generate);
+		editor.putInt ("digits", digits);
+		editor.putInt ("budget", budget);
+	}
+
+	//=================================================================
+	//	Getter methods
+	//=================================================================
+	/**
+	 * <p>Check for active ringcode notification.</p>
+	 * @return boolean - ringcode notification is active?
+	 */
+	public boolean isActive () {
+		return active;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get speaker volume.</p>
+	 * @return int - speaker volume (0..100)
+	 */
+	public int getVolume () {
+		return volume;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get morse speed.</p>
+	 * @return int - duration of short beep in ms
+	 */
+	public int getSpeed () {
+		return speed;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get Farnsworth spacing.</p>
+	 * @return int - effective speed in percent of character speed (0=off)
+	 */
+	public int getSpacing () {
+		return spacing;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get output backend for Morse code.</p>
+	 * @return int - backend type (Morse.BACKEND_???)
+	 */
+	public int getBackend () {
+		return backend;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get Morse alphabet.</p>
+	 * @return int - alphabet identifier (Morse.ALPHABET_???)
+	 */
+	public int getAlphabet () {
+		return alphabet;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get delay before the first code of a notification.</p>
+	 * @return int - delay (ms)
+	 */
+	public int getDelay () {
+		return delay;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get silence between repeated codes.</p>
+	 * @return int - silence in percent of code duration
+	 */
+	public int getGap () {
+		return gap;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of repetitions before the silence is stretched.</p>
+	 * @return int - number of repetitions (0=never)
+	 */
+	public int getBackoff () {
+		return backoff;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for suffix matching of phone numbers.</p>
+	 * @return boolean - use suffix matching as fallback?
+	 */
+	public boolean isSuffixMatch () {
+		return suffix;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for notification of messages.</p>
+	 * @return boolean - play codes for messages (SMS, apps)?
+	 */
+	public boolean isMessageNotify () {
+		return messages;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get mode of generated codes for unassigned callers.</p>
+	 * @return int - generator mode (CodeGenerator.MODE_???)
+	 */
+	public int getGenerate () {
+		return generate;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of trailing digits in generated codes.</p>
+	 * @return int - number of digits
+	 */
+	public int getDigits () {
+		return digits;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get time budget of a code: longer codes are played faster.</p>
+	 * @return int - max. duration of a code (ms, 0=no limit)
+	 */
+	public int getBudget () {
+		return budget;
+	}
+}
@@ -16,11 +16,11 @@ package org.hoi_polloi.android.ringcode;
 
 import org.hoi_polloi.android.ringcode.R;
 import android.app.Activity;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.SeekBar;
+import android.widget.Spinner;
 
 
 ///////////////////////////////////////////////////////////////////////
@@ -32,20 +32,6 @@ import android.widget.SeekBar;
  */
 public class Setup extends Activity {
 
-	//=================================================================
-	/**
-	 * <p>Name of preference settings (persistent).</p>
-	 */
-	private static final String PREFS = "RingCode_Prefs";
-
-	//=================================================================
-	/*
-	 * Attributes:
-	 */
-	private static boolean	active	= true;		// use ringcodes?
-	private static int		volume	= 100;		// speaker volume (0..100)
-	private static int		speed	= 100;		// duration of short beep in ms
-	
 	//=================================================================
 	/**
 	 * <p>Constructor: Instantiate configuration activity.</p>
@@ -56,16 +42,22 @@ public class Setup extends Activity {
 		super.onCreate (savedInstanceState);
 		setContentView (R.layout.config);
 
-		// get preference data
-		SharedPreferences settings = getSharedPreferences (PREFS, 0);
-		active = settings.getBoolean ("active", false);
-		volume = settings.getInt ("volume", 100);
-		speed = settings.getInt ("speed", 100);
-
-		// pass to parameters to associated views
-		((CheckBox) findViewById (R.id.cfg_active)).setChecked (active);
-		((SeekBar) findViewById (R.id.cfg_volume)).setProgress (volume);
-		((SeekBar) findViewById (R.id.cfg_speed)).setProgress (250-speed);
+		// pass current settings to associated views
+		Settings s = Settings.get();
+		((CheckBox) findViewById (R.id.cfg_active)).setChecked (s.isActive());
+		((SeekBar) findViewById (R.id.cfg_volume)).setProgress (s.getVolume());
+		((SeekBar) findViewById (R.id.cfg_speed)).setProgress (250 - s.getSpeed());
+		((SeekBar) findViewById (R.id.cfg_spacing)).setProgress (s.getSpacing() == 0 ? 0 : 100 - s.getSpacing());
+		((CheckBox) findViewById (R.id.cfg_synth)).setChecked (s.getBackend() == Morse.BACKEND_PCM);
+		((Spinner) findViewById (R.id.cfg_alphabet)).setSelection (s.getAlphabet());
+		((SeekBar) findViewById (R.id.cfg_delay)).setProgress (s.getDelay() / 100);
+		((SeekBar) findViewById (R.id.cfg_gap)).setProgress (s.getGap());
+		((SeekBar) findViewById (R.id.cfg_backoff)).setProgress (s.getBackoff());
+		((CheckBox) findViewById (R.id.cfg_suffix)).setChecked (s.isSuffixMatch());
+		((CheckBox) findViewById (R.id.cfg_messages)).setChecked (s.isMessageNotify());
+		((Spinner) findViewById (R.id.cfg_generate)).setSelection (s.getGenerate());
+		((SeekBar) findViewById (R.id.cfg_digits)).setProgress (s.getDigits() - 1);
+		((SeekBar) findViewById (R.id.cfg_budget)).setProgress (s.getBudget() / 1000);
 	}
 
 	//=================================================================
@@ -79,10 +71,14 @@ public class Setup extends Activity {
 
 		// play morse code once
 			case R.id.cfg_play: {
-				volume = ((SeekBar) findViewById (R.id.cfg_volume)).getProgress();
-				speed = 250 - ((SeekBar) findViewById (R.id.cfg_speed)).getProgress();
-				Morse beeper = new Morse (speed, volume);
+				// use settings from views (not saved yet)
+				Settings s = readViews();
+				Morse beeper = new Morse (
+					MorseTiming.forDotLength (s.getSpeed(), s.getSpacing()),
+					Morse.getAlphabet (s.getAlphabet()), s.getVolume(), s.getBackend()
+				);
 				beeper.sendCode ("!");
+				beeper.release();
 			} break;
 		}
 	}
@@ -95,29 +91,59 @@ public class Setup extends Activity {
 	protected void onStop () {
 		super.onStop();
 
-		// save configuration in preference setting
-		SharedPreferences settings = getSharedPreferences (PREFS, 0);
-		SharedPreferences.Editor editor = settings.edit();
+		// publish and save configuration
+		Settings.save (readViews());
 
-		volume = ((SeekBar) findViewById (R.id.cfg_volume)).getProgress();
-		speed = 250 - ((SeekBar) findViewById (R.id.cfg_speed)).getProgress();
-		active = ((CheckBox) findViewById (R.id.cfg_active)).isChecked();
-		
-		editor.putBoolean ("active", active);
-		editor.putInt ("volume", volume);
-		editor.putInt ("speed", speed);
-		editor.commit();
+		// drop samples and players set up with old settings
+		WaveCache.clear();
+		PlaybackScheduler.settingsChanged();
+		RingerMonitor.update (this);
 	}
 
 	//=================================================================
-	//	Getter methods
+	/**
+	 * <p>Get settings from views.</p>
+	 * @return Settings - settings as shown
+	 */
+	private Settings readViews () {
+		return new Settings (
+			((CheckBox) findViewById (R.id.cfg_active)).isChecked(),
+			((SeekBar) findViewById (R.id.cfg_volume)).getProgress(),
+			250 - ((SeekBar) findViewById (R.id.cfg_speed)).getProgress(),
+			readSpacing(),
+			((CheckBox) findViewById (R.id.cfg_synth)).isChecked() ? Morse.BACKEND_PCM : Morse.BACKEND_TONE,
+			((Spinner) findViewById (R.id.cfg_alphabet)).getSelectedItemPosition(),
+			100 * ((SeekBar) findViewById (R.id.cfg_delay)).getProgress(),
+			((SeekBar) findViewById (R.id.cfg_gap)).getProgress(),
+			((SeekBar) findViewById (R.id.cfg_backoff)).getProgress(),
+			((CheckBox) findViewById (R.id.cfg_suffix)).isChecked(),
+			((CheckBox) findViewById (R.id.cfg_messages)).isChecked(),
+			((Spinner) findViewById (R.id.cfg_generate)).getSelectedItemPosition(),
+			((SeekBar) findViewById (R.id.cfg_digits)).getProgress() + 1,
+			1000 * ((SeekBar) findViewById (R.id.cfg_budget)).getProgress()
+		);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get Farnsworth setting from view: the slider stretches the
+	 * gaps, so its value is the reduction of the effective speed.</p>
+	 * @return int - effective speed in percent of character speed (0=off)
+	 */
+	private int readSpacing () {
+		int p = ((SeekBar) findViewById (R.id.cfg_spacing)).getProgress();
+		return (p == 0 ? 0 : 100 - p);
+	}
+
+	//=================================================================
+	//	Getter methods (current settings, see {@link Settings})
 	//=================================================================
 	/**
 	 * <p>Check for active ringcode notification.</p>
 	 * @return boolean - ringcode notification is active?
 	 */
 	public static boolean isActivated () {
-		return active;
+		return Settings.get().isActive();
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -125,7 +151,7 @@ public class Setup extends Activity {
 	 * @return int - speaker volume (0..100)
 	 */
 	public static int getVolume() {
-		return volume;
+		return Settings.get().getVolume();
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -133,6 +159,80 @@ public class Setup extends Activity {
 	 * @return int - duration of short beep in ms
 	 */
 	public static int getSpeed() {
-		return speed;
+		return Settings.get().getSpeed();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get Farnsworth spacing.</p>
+	 * @return int - effective speed in percent of character speed (0=off)
+	 */
+	public static int getSpacing() {
+		return Settings.get().getSpacing();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get output backend for Morse code.</p>
+	 * @return int - backend type (Morse.BACKEND_???)
+	 */
+	public static int getBackend() {
+		return Settings.get().getBackend();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get Morse alphabet.</p>
+	 * @return int - alphabet identifier (Morse.ALPHABET_???)
+	 */
+	public static int getAlphabet() {
+		return Settings.get().getAlphabet();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get delay before the first code of a notification.</p>
+	 * @return int - delay (ms)
+	 */
+	public static int getDelay() {
+		return Settings.get().getDelay();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get silence between repeated codes.</p>
+	 * @return int - silence in percent of code duration
+	 */
+	public static int getGap() {
+		return Settings.get().getGap();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of repetitions before the silence is stretched.</p>
+	 * @return int - number of repetitions (0=never)
+	 */
+	public static int getBackoff() {
+		return Settings.get().getBackoff();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for suffix matching of phone numbers (used if no number
+	 * matches exactly).</p>
+	 * @return boolean - use suffix matching as fallback?
+	 */
+	public static boolean isSuffixMatch() {
+		return Settings.get().isSuffixMatch();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check for notification of messages (SMS and requests of other
+	 * applications).</p>
+	 * @return boolean - play codes for messages?
+	 */
+	public static boolean isMessageNotify() {
+		return Settings.get().isMessageNotify();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get time budget of a code (longer codes are played faster).</p>
+	 * @return int - max. duration of a code (ms, 0=no limit)
+	 */
+	public static int getBudget() {
+		return Settings.get().getBudget();
 	}
 }
@@ -0,0 +1,138 @@
+//*********************************************************************
+//*   PGMID.        DIRECT-INDEXED MORSE CODE ALPHABETS.              *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Morse alphabet backed by a table that is directly indexed by
+ * the character value (relative to a base character). Characters
+ * outside the table are looked up in an optional fallback alphabet.
+ * Letters are registered in upper and lower case.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public final class TableAlphabet implements MorseAlphabet {
+
+	//=================================================================
+	/*
+	 * Alphabet definitions (character followed by its code):
+	 */
+	private static final String[] DEF_ITU = new String[] {
+		// numbers 0 .. 9
+		"0-----", "1.----", "2..---", "3...--", "4....-",
+		"5.....", "6-....", "7--...", "8---..", "9----.",
+		// characters A .. Z
+		"A.-", "B-...", "C-.-.", "D-..", "E.", "F..-.", "G--.",
+		"H....", "I..", "J.---", "K-.-", "L.-..", "M--", "N-.",
+		"O---", "P.--.", "Q--.-", "R.-.", "S...", "T-", "U..-",
+		"V...-", "W.--", "X-..-", "Y-.--", "Z--..",
+		// punctuation (ITU-R M.1677 and common extensions)
+		"..-.-.-", ",--..--", "?..--..", "'.----.", "/-..-.",
+		"(-.--.", ")-.--.-", "&.-...", ":---...", ";-.-.-.",
+		"=-...-", "+.-.-.", "--....-", "_..--.-", "\".-..-.",
+		"$...-..-", "@.--.-.",
+		// special characters ("understood")
+		"!...-."
+	};
+	// Russian (U+0410 .. U+042F, U+0401)
+	private static final String[] DEF_CYRILLIC = new String[] {
+		"\u0410.-", "\u0411-...", "\u0412.--", "\u0413--.", "\u0414-..",
+		"\u0415.", "\u0401.", "\u0416...-", "\u0417--..", "\u0418..",
+		"\u0419.---", "\u041A-.-", "\u041B.-..", "\u041C--", "\u041D-.",
+		"\u041E---", "\u041F.--.", "\u0420.-.", "\u0421...", "\u0422-",
+		"\u0423..-", "\u0424..-.", "\u0425....", "\u0426-.-.", "\u0427---.",
+		"\u0428----", "\u0429--.-", "\u042A--.--", "\u042B-.--", "\u042C-..-",
+		"\u042D..-..", "\u042E..--", "\u042F.-.-"
+	};
+	// Greek (U+0391 .. U+03A9, final sigma U+03C2)
+	private static final String[] DEF_GREEK = new String[] {
+		"\u0391.-", "\u0392-...", "\u0393--.", "\u0394-..", "\u0395.",
+		"\u0396--..", "\u0397....", "\u0398-.-.", "\u0399..", "\u039A-.-",
+		"\u039B.-..", "\u039C--", "\u039D-.", "\u039E-..-", "\u039F---",
+		"\u03A0.--.", "\u03A1.-.", "\u03A3...", "\u03C2...", "\u03A4-",
+		"\u03A5-.--", "\u03A6..-.", "\u03A7----", "\u03A8--.-", "\u03A9.--"
+	};
+
+	//=================================================================
+	/*
+	 * Shipped alphabets:
+	 */
+	public static final TableAlphabet ITU = new TableAlphabet ("ITU", '\u0000', 0x80, DEF_ITU, null);
+	public static final TableAlphabet CYRILLIC = new TableAlphabet ("Cyrillic", '\u0400', 0x60, DEF_CYRILLIC, ITU);
+	public static final TableAlphabet GREEK = new TableAlphabet ("Greek", '\u0380', 0x50, DEF_GREEK, ITU);
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private final String name;				// alphabet name
+	private final char base;				// first character in table
+	private final int[] table;				// packed codes
+	private final MorseAlphabet fallback;	// alphabet for other characters
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Build alphabet table from definitions.</p>
+	 * @param name String - alphabet name
+	 * @param base char - first character in table
+	 * @param size int - number of table entries
+	 * @param def String[] - definitions (character and code)
+	 * @param fallback MorseAlphabet - alphabet for other characters (or null)
+	 */
+	public TableAlphabet (String name, char base, int size, String[] def, MorseAlphabet fallback) {
+		this.name = name;
+		this.base = base;
+		this.fallback = fallback;
+		table = new int [size];
+		for (String d : def) {
+			int code = Morse.pack (d.substring (1));
+			char ch = d.charAt (0);
+			put (ch, code);
+			put (Character.toLowerCase (ch), code);
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Set table entry for character (if in table range).</p>
+	 * @param ch char - character
+	 * @param code int - packed code
+	 */
+	private void put (char ch, int code) {
+		int pos = ch - base;
+		if (pos >= 0 && pos < table.length)
+			table[pos] = code;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get element sequence for character.</p>
+	 * @param ch char - character to be morsed
+	 * @return int - bit-packed element sequence (0 if unknown)
+	 */
+	public int lookup (char ch) {
+		int pos = ch - base;
+		if (pos >= 0 && pos < table.length && table[pos] != 0)
+			return table[pos];
+		return (fallback == null ? 0 : fallback.lookup (ch));
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get name of alphabet.</p>
+	 * @return String - alphabet name
+	 */
+	public String getName () {
+		return name;
+	}
+}
@@ -0,0 +1,114 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE OUTPUT USING THE TONE GENERATOR.       *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.media.AudioManager;
+import android.media.ToneGenerator;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Morse code backend that starts a system tone for every element
+ * and sleeps for the pause in between.</p>
+ * <p>Element start times are absolute deadlines within the code (see
+ * {@link DeadlineTimer}), so sleep overshoot does not accumulate.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class ToneBackend implements MorseBackend {
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private int tone = ToneGenerator.TONE_CDMA_DIAL_TONE_LITE;
+	private ToneGenerator gen = null;
+	private DeadlineTimer timer = new DeadlineTimer();
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new tone backend with given
+	 * volume setting.</p>
+	 * @param vol int - speaker volume (0..100)
+	 */
+	public ToneBackend (int vol) {
+		gen = new ToneGenerator (AudioManager.STREAM_ALARM, vol);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Play compiled Morse code.</p>
+	 * @param prog MorseProgram - compiled code to be played
+	 */
+	public void play (MorseProgram prog) {
+
+		// process all elements...
+		int len = prog.size();
+		timer.start (len / 2);
+		long t = 0;
+		for (int i = 0; i < len; i += 2) {
+			if (!timer.waitUntil (t, i / 2))
+				return;
+			int on = prog.get (i);
+			gen.startTone (tone, on);
+			t += on + prog.get (i+1);
+		}
+		// wait for end of final gap
+		timer.waitUntil (t, -1);
+		if (Debug.verbose)
+			Debug.log ("Tone timing: lateness mean=" + timer.getMeanLateness()
+				+ "us, max=" + timer.getMaxLateness() + "us");
+	}
+
+	//=================================================================
+	/**
+	 * <p>Prepare output: the tone generator is created with the
+	 * backend, so there is nothing left to do.</p>
+	 */
+	public void prepare () {
+	}
+
+	//=================================================================
+	/**
+	 * <p>Stop playback: silence the current tone and wake up the
+	 * playing thread.</p>
+	 */
+	public void cancel () {
+		timer.cancel();
+		ToneGenerator g = gen;
+		if (g != null)
+			g.stopTone();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get timer of the backend (lateness of the last run).</p>
+	 * @return DeadlineTimer - element timer
+	 */
+	public DeadlineTimer getTimer () {
+		return timer;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Release the tone generator.</p>
+	 */
+	public void release () {
+		if (gen != null) {
+			gen.release();
+			gen = null;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+//*********************************************************************
+//*   PGMID.        MORSE CODE OUTPUT USING THE VIBRATOR.             *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import android.os.Vibrator;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Haptic Morse code backend: a compiled program is converted into
+ * a single vibration pattern that is handed to the system.</p>
+ * <p>A repeating notification is started with one call to
+ * {@link Vibrator#vibrate(long[], int)}; the system replays the code
+ * until it is cancelled, no Java thread is involved.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class VibratorBackend implements MorseBackend {
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private Vibrator vibrator = null;
+	private DeadlineTimer timer = new DeadlineTimer();
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Instantiate new haptic backend.</p>
+	 * @param vibrator Vibrator - system vibrator service (may be null)
+	 */
+	public VibratorBackend (Vibrator vibrator) {
+		this.vibrator = vibrator;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Convert program into a vibration pattern: the first entry is
+	 * the delay before the first element, followed by the on/off
+	 * durations of the program. The pause is added to the final gap.</p>
+	 * @param prog MorseProgram - compiled code
+	 * @param delay long - delay before first element (ms)
+	 * @param pause long - additional silence after the code (ms)
+	 * @return long[] - vibration pattern
+	 */
+	public static long[] toPattern (MorseProgram prog, long delay, long pause) {
+		int len = prog.size();
+		long[] pattern = new long [len + 1];
+		pattern[0] = delay;
+		for (int i = 0; i < len; i++)
+			pattern[i+1] = prog.get (i);
+		if (len > 0)
+			pattern[len] += pause;
+		return pattern;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Play compiled Morse code once and wait for its end.</p>
+	 * @param prog MorseProgram - compiled code to be played
+	 */
+	public void play (MorseProgram prog) {
+		if (vibrator == null || prog.isEmpty() || timer.isCancelled())
+			return;
+		timer.start (0);
+		vibrator.vibrate (toPattern (prog, 0, 0), -1);
+		timer.waitUntil (prog.getDuration(), -1);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Start a notification without waiting: the code is repeated by
+	 * the system according to the schedule (or played once if no
+	 * schedule is given).</p>
+	 * <p>The system repeats a constant pattern, so the back-off of the
+	 * schedule is not applied; the pause after the first code is used
+	 * for all repetitions. A limited schedule is played as one pattern
+	 * with all codes.</p>
+	 * @param prog MorseProgram - compiled code to be played
+	 * @param policy RepeatPolicy - repeat schedule (or null)
+	 */
+	public void start (MorseProgram prog, RepeatPolicy policy) {
+		if (vibrator == null || prog.isEmpty())
+			return;
+		if (policy == null) {
+			vibrator.vibrate (toPattern (prog, 0, 0), -1);
+			return;
+		}
+		long pause = policy.getPeriod (prog, 1) - prog.getDuration();
+		long[] pattern = toPattern (prog, policy.getInitialDelay(), pause);
+		int count = policy.getLimit();
+		if (count == 0) {
+			// The vibrator service alternates off/on from the repeat
+			// index and treats the entry there as "off" time (before
+			// Android 8.0), so repeating from the first "on" entry would
+			// swap tones and gaps. An empty off/on pair after the delay
+			// puts the repeat index on an "off" entry: the pattern is
+			// [delay, 0, 0, on1, off1, ..., onN, offN+pause].
+			long[] rep = new long [pattern.length + 2];
+			rep[0] = pattern[0];
+			System.arraycopy (pattern, 1, rep, 3, pattern.length - 1);
+			vibrator.vibrate (rep, 2);
+			return;
+		}
+		// repeat elements (not the initial delay) of pattern
+		int len = pattern.length - 1;
+		long[] all = new long [1 + count * len];
+		all[0] = pattern[0];
+		for (int n = 0; n < count; n++)
+			System.arraycopy (pattern, 1, all, 1 + n * len, len);
+		vibrator.vibrate (all, -1);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Prepare output: the vibrator is a system service, so there is
+	 * nothing to do.</p>
+	 */
+	public void prepare () {
+	}
+
+	//=================================================================
+	/**
+	 * <p>Stop vibration and wake up a waiting thread.</p>
+	 */
+	public void cancel () {
+		timer.cancel();
+		if (vibrator != null)
+			vibrator.cancel();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Release backend: the vibrator is a system service, so there
+	 * is nothing to release.</p>
+	 */
+	public void release () {
+	}
+}
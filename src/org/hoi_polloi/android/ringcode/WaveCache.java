@@ -0,0 +1,141 @@
+//*********************************************************************
+//*   PGMID.        CACHE FOR RENDERED MORSE CODE SAMPLES.            *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import android.content.ComponentCallbacks2;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Memory-bounded LRU cache of rendered PCM buffers, keyed by code,
+ * timing, alphabet and volume (see {@link MorseProgram#getKey()}).</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class WaveCache {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int MAX_BYTES = 2 * 1024 * 1024;	// cache capacity
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private static final LinkedHashMap<String,short[]> entries =
+		new LinkedHashMap<String,short[]> (16, 0.75f, true);
+	private static int bytes = 0;		// current size of cached samples
+	private static int hits = 0;		// number of cache hits
+	private static int misses = 0;		// number of cache misses
+
+	//=================================================================
+	/**
+	 * <p>Get cached samples.</p>
+	 * @param key String - cache key
+	 * @return short[] - PCM samples (or null if not cached)
+	 */
+	public static synchronized short[] get (String key) {
+		short[] pcm = entries.get (key);
+		if (pcm == null)
+			misses++;
+		else
+			hits++;
+		return pcm;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Add samples to cache; least recently used entries are dropped
+	 * to stay within the capacity.</p>
+	 * @param key String - cache key
+	 * @param pcm short[] - PCM samples
+	 */
+	public static synchronized void put (String key, short[] pcm) {
+		int size = 2 * pcm.length;
+		if (size > MAX_BYTES)
+			return;
+		short[] old = entries.put (key, pcm);
+		if (old != null)
+			bytes -= 2 * old.length;
+		bytes += size;
+		shrink (MAX_BYTES);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Drop least recently used entries until the cache is not larger
+	 * than the given size.</p>
+	 * @param limit int - max. size of cache (in bytes)
+	 */
+	private static void shrink (int limit) {
+		Iterator<Map.Entry<String,short[]>> it = entries.entrySet().iterator();
+		while (bytes > limit && it.hasNext()) {
+			bytes -= 2 * it.next().getValue().length;
+			it.remove();
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Drop all cached entries.</p>
+	 */
+	public static synchronized void clear () {
+		entries.clear();
+		bytes = 0;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Release memory on request of the system.</p>
+	 * @param level int - trim level (see ComponentCallbacks2)
+	 */
+	public static synchronized void trim (int level) {
+		Debug.log ("WaveCache: trim(" + level + "), " + hits + " hits, " + misses + " misses");
+		// keep half of the entries while we are still in the foreground
+		shrink (level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN ? bytes / 2 : 0);
+	}
+
+	//=================================================================
+	//	Getter methods
+	//=================================================================
+	/**
+	 * <p>Get number of cache hits.</p>
+	 * @return int - number of hits
+	 */
+	public static synchronized int getHits () {
+		return hits;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of cache misses.</p>
+	 * @return int - number of misses
+	 */
+	public static synchronized int getMisses () {
+		return misses;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get size of cached samples.</p>
+	 * @return int - size in bytes
+	 */
+	public static synchronized int getSize () {
+		return bytes;
+	}
+}
@@ -0,0 +1,142 @@
+//*********************************************************************
+//*   PGMID.        STREAMING WAV FILE WRITER.                        *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Write 16-bit mono PCM samples into a RIFF/WAVE file.</p>
+ * <p>Samples are streamed through a fixed direct buffer into a file
+ * channel, so the size of the file does not affect memory use. The
+ * header is written with zero sizes first and completed on close.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class WaveWriter {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int HEADER_SIZE = 44;		// size of RIFF/WAVE header
+	private static final int BUFFER_SIZE = 8192;	// size of output buffer
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private RandomAccessFile file = null;
+	private FileChannel channel = null;
+	private ByteBuffer buf = null;
+	private int rate = 0;			// sample rate (Hz)
+	private long samples = 0;		// number of written samples
+
+	//=================================================================
+	/**
+	 * <p>Constructor: Create (or truncate) WAV file.</p>
+	 * @param f File - output file
+	 * @param rate int - sample rate (Hz)
+	 * @throws IOException - file can't be written
+	 */
+	public WaveWriter (File f, int rate) throws IOException {
+		this.rate = rate;
+		file = new RandomAccessFile (f, "rw");
+		file.setLength (0);
+		channel = file.getChannel();
+		buf = ByteBuffer.allocateDirect (BUFFER_SIZE).order (ByteOrder.LITTLE_ENDIAN);
+		writeHeader();
+		channel.position (HEADER_SIZE);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Append samples to the file.</p>
+	 * @param pcm short[] - PCM samples
+	 * @param off int - offset of first sample
+	 * @param len int - number of samples
+	 * @throws IOException - write failed
+	 */
+	public void write (short[] pcm, int off, int len) throws IOException {
+		int end = off + len;
+		for (int n = off; n < end; n++) {
+			if (buf.remaining() < 2)
+				flush();
+			buf.putShort (pcm[n]);
+		}
+		samples += len;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Complete the header and close the file.</p>
+	 * @throws IOException - write failed
+	 */
+	public void close () throws IOException {
+		try {
+			flush();
+			writeHeader();
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Write buffered samples to the file channel.</p>
+	 * @throws IOException - write failed
+	 */
+	private void flush () throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write (buf);
+		buf.clear();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Write header for the current number of samples at the start of
+	 * the file.</p>
+	 * @throws IOException - write failed
+	 */
+	private void writeHeader () throws IOException {
+		int data = (int) (2 * samples);
+		ByteBuffer hdr = ByteBuffer.allocate (HEADER_SIZE).order (ByteOrder.LITTLE_ENDIAN);
+		hdr.put ((byte) 'R').put ((byte) 'I').put ((byte) 'F').put ((byte) 'F');
+		hdr.putInt (HEADER_SIZE - 8 + data);
+		hdr.put ((byte) 'W').put ((byte) 'A').put ((byte) 'V').put ((byte) 'E');
+		hdr.put ((byte) 'f').put ((byte) 'm').put ((byte) 't').put ((byte) ' ');
+		hdr.putInt (16);				// size of format chunk
+		hdr.putShort ((short) 1);		// PCM
+		hdr.putShort ((short) 1);		// mono
+		hdr.putInt (rate);				// sample rate
+		hdr.putInt (2 * rate);			// byte rate
+		hdr.putShort ((short) 2);		// block align
+		hdr.putShort ((short) 16);		// bits per sample
+		hdr.put ((byte) 'd').put ((byte) 'a').put ((byte) 't').put ((byte) 'a');
+		hdr.putInt (data);
+		hdr.flip();
+		long pos = 0;
+		while (hdr.hasRemaining())
+			pos += channel.write (hdr, pos);
+	}
+}
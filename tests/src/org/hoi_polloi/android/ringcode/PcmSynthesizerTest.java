@@ -0,0 +1,134 @@
+//*********************************************************************
+//*   PGMID.        UNIT TESTS FOR PCM STREAMING.                     *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.util.Random;
+import org.junit.Test;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Unit tests (plain JVM) for streamed PCM output: the chunks of
+ * {@link PcmSynthesizer.Stream} and the samples passed through a
+ * {@link SampleRing} must be the same, sample for sample, as the
+ * samples of {@link PcmSynthesizer#render(MorseProgram)}.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class PcmSynthesizerTest {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int ROUNDS = 100;		// random programs per test
+	private static final String[] MESSAGES = {
+		"E", "SOS", "BERND FIX", "<AR> K",
+		"THE QUICK BROWN FOX JUMPS OVER THE LAZY DOG 0123456789"
+	};
+
+	//=================================================================
+	/**
+	 * <p>Streamed chunks (of any size) equal the rendered samples.</p>
+	 */
+	@Test
+	public void streamEqualsRender () {
+		Random rnd = new Random (1);
+		for (int n = 0; n < ROUNDS; n++) {
+			MorseProgram prog = randomProgram (rnd, n);
+			PcmSynthesizer synth = new PcmSynthesizer (rnd.nextInt (101));
+			short[] ref = synth.render (prog);
+			PcmSynthesizer.Stream src = synth.stream (prog);
+			assertEquals (ref.length, src.getLength());
+			short[] chunk = new short [1 + rnd.nextInt (5000)];
+			short[] out = new short [ref.length];
+			int pos = 0, count;
+			while ((count = src.next (chunk)) > 0) {
+				System.arraycopy (chunk, 0, out, pos, count);
+				pos += count;
+			}
+			assertEquals (ref.length, pos);
+			assertArrayEquals (ref, out);
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Samples passed from a producer thread to a consumer thread
+	 * through a (small) ring buffer arrive unchanged and complete.</p>
+	 * @throws InterruptedException - test interrupted
+	 */
+	@Test
+	public void ringPassesSamples () throws InterruptedException {
+		Random rnd = new Random (2);
+		for (int n = 0; n < ROUNDS / 10; n++) {
+			PcmSynthesizer synth = new PcmSynthesizer (100);
+			MorseProgram prog = randomProgram (rnd, n);
+			short[] ref = synth.render (prog);
+			final SampleRing ring = new SampleRing (1 + rnd.nextInt (4096));
+			final short[] out = new short [ref.length];
+			final int[] got = new int [1];
+			Thread consumer = new Thread() {
+				public void run () {
+					short[] buf = new short [333];
+					int count;
+					while ((count = ring.read (buf, 0, buf.length)) >= 0) {
+						if (count == 0)
+							ring.awaitData();
+						else {
+							System.arraycopy (buf, 0, out, got[0], count);
+							got[0] += count;
+						}
+					}
+				}
+			};
+			consumer.start();
+			PcmSynthesizer.Stream src = synth.stream (prog);
+			short[] chunk = new short [1 + rnd.nextInt (2048)];
+			int count;
+			while ((count = src.next (chunk)) > 0) {
+				int off = 0;
+				while (off < count) {
+					int w = ring.write (chunk, off, count - off);
+					if (w == 0)
+						ring.awaitRoom();
+					off += w;
+				}
+			}
+			ring.close();
+			consumer.join (10000);
+			assertEquals (ref.length, got[0]);
+			assertArrayEquals (ref, out);
+		}
+	}
+
+	//=================================================================
+	//	Helper methods
+	//=================================================================
+	/**
+	 * <p>Compile a message with random timing.</p>
+	 * @param rnd Random - random generator
+	 * @param n int - index of message
+	 * @return MorseProgram - compiled message
+	 */
+	private static MorseProgram randomProgram (Random rnd, int n) {
+		int dot = 20 + rnd.nextInt (200);
+		int spacing = (rnd.nextInt (3) == 0 ? 0 : 30 + rnd.nextInt (70));
+		MorseCompiler c = new MorseCompiler (MorseTiming.forDotLength (dot, spacing), TableAlphabet.ITU);
+		return c.compile (MESSAGES[n % MESSAGES.length]);
+	}
+}
@@ -0,0 +1,175 @@
+//*********************************************************************
+//*   PGMID.        UNIT TESTS FOR PHONE NUMBER UTILITY CLASS.        *
+//*   AUTHOR.       BERND R. FIX   >Y<                                *
+//*   DATE WRITTEN. 26/10/18.                                         *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.         *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE       *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.          *
+//*   REMARKS.      REVISION HISTORY AT END OF FILE.                  *
+//*********************************************************************
+
+package org.hoi_polloi.android.ringcode;
+
+///////////////////////////////////////////////////////////////////////
+//Import external declarations
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.Random;
+import org.junit.Test;
+
+
+///////////////////////////////////////////////////////////////////////
+/**
+ * <p>Unit tests (plain JVM) for {@link PhoneNumber}: the allocation-free
+ * normalization and the packed numbers are checked against the former
+ * string implementation of normalization and comparison.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class PhoneNumberTest {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int ROUNDS = 100000;	// random numbers per test
+	private static final char[] CHARS = {
+		'0', '0', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+		'+', ' ', '-', '/', '(', ')', '#'
+	};
+	private static final char[] OTHER_DIGITS = { '\u0660', '\u0669', '\uff11' };
+
+	//=================================================================
+	/**
+	 * <p>Normalization into a buffer equals the former normalization.</p>
+	 */
+	@Test
+	public void normalizeBuffer () {
+		Random rnd = new Random (1);
+		char[] buf = new char [64];
+		for (int n = 0; n < ROUNDS; n++) {
+			String number = randomNumber (rnd);
+			String expect = normalizeOld (number);
+			int len = PhoneNumber.normalize (number, buf);
+			assertEquals (number, expect, new String (buf, 0, len));
+			assertEquals (number, expect, PhoneNumber.normalize (number));
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Normalization reports a buffer that is too small.</p>
+	 */
+	@Test
+	public void normalizeSmallBuffer () {
+		assertEquals (-1, PhoneNumber.normalize ("+49 30 1234", new char [7]));
+		assertEquals (8, PhoneNumber.normalize ("+49 30 1234", new char [8]));
+		assertEquals (0, PhoneNumber.normalize ("00-0", new char [0]));
+	}
+
+	//=================================================================
+	/**
+	 * <p>Packed numbers are equal exactly if the normalized numbers are
+	 * equal (the former comparison with equal lengths), and both pack
+	 * methods agree.</p>
+	 */
+	@Test
+	public void packEquality () {
+		Random rnd = new Random (2);
+		int packed = 0;
+		int equal = 0;
+		for (int n = 0; n < ROUNDS; n++) {
+			String a = normalizeOld (randomNumber (rnd));
+			String b = (rnd.nextInt (4) == 0 ? a : normalizeOld (randomNumber (rnd)));
+			long pa = PhoneNumber.pack (a);
+			long pb = PhoneNumber.pack (b);
+			assertEquals (a, pa, PhoneNumber.pack (a.toCharArray(), a.length()));
+			if (pa == PhoneNumber.INVALID || pb == PhoneNumber.INVALID)
+				continue;
+			packed++;
+			boolean same = isSameOld (a, b) && a.length() == b.length();
+			if (same)
+				equal++;
+			assertEquals (a + "/" + b, same, pa == pb);
+		}
+		// enough packable and equal pairs to be meaningful
+		assertTrue (packed > ROUNDS / 2);
+		assertTrue (equal > ROUNDS / 10);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Numbers that are too long or have non-ASCII digits can't be
+	 * packed.</p>
+	 */
+	@Test
+	public void packInvalid () {
+		assertTrue (PhoneNumber.pack ("123456789012345") != PhoneNumber.INVALID);
+		assertEquals (PhoneNumber.INVALID, PhoneNumber.pack ("1234567890123456"));
+		assertEquals (PhoneNumber.INVALID, PhoneNumber.pack ("12\u06603"));
+		assertEquals (PhoneNumber.INVALID, PhoneNumber.pack ("12".toCharArray(), -1));
+		assertTrue (PhoneNumber.pack ("") != PhoneNumber.pack ("0"));
+		assertTrue (PhoneNumber.pack ("1") != PhoneNumber.pack ("01"));
+	}
+
+	//=================================================================
+	//	Helper methods
+	//=================================================================
+	/**
+	 * <p>Generate random phone number (digits, separators, prefixes and
+	 * non-ASCII digits).</p>
+	 * @param rnd Random - random generator
+	 * @return String - phone number
+	 */
+	private static String randomNumber (Random rnd) {
+		StringBuilder sb = new StringBuilder();
+		switch (rnd.nextInt (4)) {
+			case 0: sb.append ("00"); break;
+			case 1: sb.append ('+'); break;
+			case 2: sb.append ('0'); break;
+		}
+		int len = rnd.nextInt (20);
+		for (int n = 0; n < len; n++)
+			sb.append (CHARS[rnd.nextInt (CHARS.length)]);
+		if (len > 0 && rnd.nextInt (8) == 0)
+			sb.setCharAt (sb.length() - 1 - rnd.nextInt (len), OTHER_DIGITS[rnd.nextInt (OTHER_DIGITS.length)]);
+		return sb.toString();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Former normalization of phone numbers (prefix stripping).</p>
+	 * @param number String - phone number
+	 * @return String - normalized phone number
+	 */
+	private static String normalizeOld (String number) {
+		StringBuffer buf = new StringBuffer();
+		if (number.startsWith ("00"))
+			number = number.substring (2);
+		else if (number.startsWith ("+"))
+			number = number.substring (1);
+		else if (number.startsWith ("0"))
+			number = number.substring (1);
+		int count = number.length();
+		boolean init = true;
+		for (int n = 0; n < count; n++) {
+			char ch = number.charAt (n);
+			if (!Character.isDigit (ch) || (init && ch == '0'))
+				continue;
+			buf.append (ch);
+			init = false;
+		}
+		return buf.toString();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Former comparison of normalized phone numbers (suffix).</p>
+	 * @param num1 String - normalized phone number
+	 * @param num2 String - normalized phone number
+	 * @return boolean - phone numbers match
+	 */
+	private static boolean isSameOld (String num1, String num2) {
+		return num1.endsWith (num2) || num2.endsWith (num1);
+	}
+}